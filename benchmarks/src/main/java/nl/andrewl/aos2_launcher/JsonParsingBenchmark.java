@@ -0,0 +1,54 @@
+package nl.andrewl.aos2_launcher;
+
+import com.google.gson.stream.JsonReader;
+import nl.andrewl.aos2_launcher.benchmarks.Fixtures;
+import nl.andrewl.aos2_launcher.model.ClientVersionRelease;
+import nl.andrewl.aos2_launcher.model.Server;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the GitHub releases and registry server responses.
+ * This lives in the launcher's own package, since {@link ServersFetcher} is
+ * package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonParsingBenchmark {
+	@Param({"100"})
+	public int releaseCount;
+
+	@Param({"1000"})
+	public int serverCount;
+
+	private String releasesJson;
+	private String serversJson;
+
+	@Setup
+	public void setup() {
+		releasesJson = Fixtures.releasesJson(releaseCount);
+		serversJson = Fixtures.serversJson(serverCount);
+	}
+
+	@Benchmark
+	public List<ClientVersionRelease> readReleases() throws IOException {
+		try (var reader = new JsonReader(new StringReader(releasesJson))) {
+			return VersionFetcher.readReleases(reader);
+		}
+	}
+
+	@Benchmark
+	public List<Server> readServers() throws IOException {
+		try (var reader = new JsonReader(new StringReader(serversJson))) {
+			return ServersFetcher.readServers(reader);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import nl.andrewl.aos2_launcher.view.BindingUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly changes to a source list are propagated to a list
+ * that's mapped with {@link BindingUtil#mapContent}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BindingUtilBenchmark {
+	@Param({"1000", "10000"})
+	public int size;
+
+	private ObservableList<Integer> source;
+	private ObservableList<String> mapped;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		source = FXCollections.observableArrayList();
+		for (int i = 0; i < size; i++) source.add(i);
+		mapped = FXCollections.observableArrayList();
+		BindingUtil.mapContent(mapped, source, i -> "Element " + i);
+	}
+
+	@Benchmark
+	public ObservableList<String> addAndRemoveInMiddle() {
+		int index = source.size() / 2;
+		source.add(index, -1);
+		source.remove(index);
+		return mapped;
+	}
+
+	@Benchmark
+	public ObservableList<String> appendAndRemoveLast() {
+		source.add(-1);
+		source.remove(source.size() - 1);
+		return mapped;
+	}
+
+	@Benchmark
+	public ObservableList<String> sortBackAndForth() {
+		FXCollections.sort(source, Comparator.reverseOrder());
+		FXCollections.sort(source);
+		return mapped;
+	}
+
+	@Benchmark
+	public ObservableList<String> setAll() {
+		source.setAll(source.stream().toList());
+		return mapped;
+	}
+}
@@ -0,0 +1,56 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import nl.andrewl.aos2_launcher.util.FileUtils;
+import nl.andrewl.aos2_launcher.util.NetworkService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FileUtils#downloadWithProgress} against a local server, so
+ * that the result reflects the launcher's own copying and bookkeeping, and
+ * not the network. Compares segmented range downloads with a single stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+	@Param({"16777216"})
+	public int size;
+
+	@Param({"true", "false"})
+	public boolean rangesSupported;
+
+	private LocalFileServer server;
+	private NetworkService network;
+	private Path dir;
+	private Path outputFile;
+
+	@Setup
+	public void setup() throws IOException {
+		server = new LocalFileServer(Fixtures.randomBytes(size), rangesSupported);
+		network = new NetworkService();
+		dir = Files.createTempDirectory("aos2-download-benchmark");
+		outputFile = dir.resolve("client.jar");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		server.close();
+		FileUtils.deleteRecursive(dir);
+	}
+
+	@Benchmark
+	public long download() throws IOException {
+		FileUtils.downloadWithProgress(network, server.getUri(), outputFile, Fixtures.NO_PROGRESS);
+		long downloaded = Files.size(outputFile);
+		Files.delete(outputFile);
+		return downloaded;
+	}
+}
@@ -0,0 +1,53 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
+import nl.andrewl.aos2_launcher.view.ElementList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ElementList#selectElement} for large lists that show a
+ * view for every element, which updates the selection state of every view.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ElementListBenchmark {
+	@Param({"1000", "10000"})
+	public int size;
+
+	private ElementList<String, Label> elementList;
+	private List<String> elements;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		FxToolkit.ensureStarted();
+		elementList = new ElementList<>(new VBox(), Label::new, Label.class, Label::getText);
+		elements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) elements.add("Element " + i);
+		elementList.addAll(elements);
+	}
+
+	@Benchmark
+	public String selectElement() {
+		// Spread selections over the whole list, since lookups are linear.
+		next = (next + 7919) % size;
+		String element = elements.get(next);
+		elementList.selectElement(element);
+		return elementList.getSelectedElement();
+	}
+
+	@Benchmark
+	public String clearSelection() {
+		elementList.selectElement(null);
+		return elementList.getSelectedElement();
+	}
+}
@@ -0,0 +1,102 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Generates the data that benchmarks run against, so that they never need
+ * the network or any files from a real installation.
+ */
+public class Fixtures {
+	/**
+	 * A progress reporter that ignores everything.
+	 */
+	public static final ProgressReporter NO_PROGRESS = new ProgressReporter() {
+		@Override public void enableProgress() {}
+		@Override public void disableProgress() {}
+		@Override public void setActionText(String text) {}
+		@Override public void setProgress(double progress) {}
+	};
+
+	/**
+	 * Generates a response like GitHub's "/releases" endpoint, including the
+	 * large fields that the launcher doesn't use, like each release's body,
+	 * author and assets.
+	 * @param count The number of releases.
+	 * @return The JSON text.
+	 */
+	public static String releasesJson(int count) {
+		Random random = new Random(42);
+		JsonArray releases = new JsonArray(count);
+		OffsetDateTime published = OffsetDateTime.of(2022, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+		for (int i = 0; i < count; i++) {
+			String tag = "v1." + (i / 10) + "." + (i % 10);
+			JsonObject release = new JsonObject();
+			release.addProperty("url", "https://api.github.com/repos/Ace-of-Shades-2/Game/releases/" + i);
+			release.addProperty("assets_url", "https://api.github.com/repos/Ace-of-Shades-2/Game/releases/" + i + "/assets");
+			release.addProperty("id", i);
+			release.addProperty("tag_name", tag);
+			release.addProperty("name", "Release " + tag);
+			release.addProperty("draft", false);
+			release.addProperty("prerelease", false);
+			release.addProperty("published_at", published.plusDays(i).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+			JsonObject author = new JsonObject();
+			author.addProperty("login", "andrewlalis");
+			author.addProperty("id", 12345);
+			author.addProperty("avatar_url", "https://avatars.githubusercontent.com/u/12345?v=4");
+			author.addProperty("type", "User");
+			release.add("author", author);
+			JsonArray assets = new JsonArray();
+			for (String suffix : new String[]{"linux-amd64", "linux-aarch64", "macos-x86_64", "macos-aarch64", "windows-amd64"}) {
+				JsonObject asset = new JsonObject();
+				asset.addProperty("name", "aos2-client-" + tag + "-" + suffix + ".jar");
+				asset.addProperty("size", 10_000_000 + random.nextInt(1_000_000));
+				asset.addProperty("browser_download_url", "https://github.com/Ace-of-Shades-2/Game/releases/download/" + tag + "/aos2-client-" + tag + "-" + suffix + ".jar");
+				asset.add("uploader", author);
+				assets.add(asset);
+			}
+			release.add("assets", assets);
+			release.addProperty("body", "Release notes. ".repeat(200));
+			releases.add(release);
+		}
+		return releases.toString();
+	}
+
+	/**
+	 * Generates a response like the registry's "/servers" endpoint.
+	 * @param count The number of servers.
+	 * @return The JSON text.
+	 */
+	public static String serversJson(int count) {
+		JsonArray servers = new JsonArray(count);
+		for (int i = 0; i < count; i++) {
+			JsonObject server = new JsonObject();
+			server.addProperty("host", "10.0." + (i / 256 % 256) + "." + (i % 256));
+			server.addProperty("port", 25565 + i % 1000);
+			server.addProperty("name", "Server " + i);
+			server.addProperty("description", "A generated server for benchmarking, number " + i + ".");
+			server.addProperty("maxPlayers", 32);
+			server.addProperty("currentPlayers", i % 33);
+			server.addProperty("lastUpdatedAt", 1_660_000_000_000L + i);
+			servers.add(server);
+		}
+		return servers.toString();
+	}
+
+	/**
+	 * Generates some random bytes which don't compress well, like a jar file.
+	 * @param size The number of bytes.
+	 * @return The bytes.
+	 */
+	public static byte[] randomBytes(int size) {
+		byte[] data = new byte[size];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+}
@@ -0,0 +1,19 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import javafx.application.Platform;
+
+/**
+ * Starts the JavaFX toolkit once per benchmark JVM, since controls can't be
+ * created without it. Nodes that aren't part of a showing scene may be
+ * created on any thread, so benchmarks don't need to run on the FX thread.
+ */
+public class FxToolkit {
+	private static boolean started = false;
+
+	public static synchronized void ensureStarted() {
+		if (started) return;
+		Platform.startup(() -> {});
+		Platform.setImplicitExit(false);
+		started = true;
+	}
+}
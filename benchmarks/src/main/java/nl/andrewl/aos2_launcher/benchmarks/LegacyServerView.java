@@ -0,0 +1,32 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import javafx.fxml.FXML;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import nl.andrewl.aos2_launcher.model.Server;
+import nl.andrewl.aos2_launcher.util.FxUtils;
+
+/**
+ * The server view as it was before it was built in code, which loads its
+ * layout from FXML for every instance. Kept only for comparison.
+ */
+public class LegacyServerView extends Pane {
+	@FXML public Label nameLabel;
+	@FXML public Label descriptionLabel;
+	@FXML public Label hostLabel;
+	@FXML public Label portLabel;
+	@FXML public Label maxPlayersLabel;
+	@FXML public Label currentPlayersLabel;
+
+	public LegacyServerView(Server server) {
+		Node node = FxUtils.loadNode("/legacy/server_view.fxml", this);
+		getChildren().add(node);
+		nameLabel.textProperty().bind(server.nameProperty());
+		descriptionLabel.textProperty().bind(server.descriptionProperty());
+		hostLabel.textProperty().bind(server.hostProperty());
+		portLabel.textProperty().bind(server.portProperty().asString());
+		maxPlayersLabel.textProperty().bind(server.maxPlayersProperty().asString());
+		currentPlayersLabel.textProperty().bind(server.currentPlayersProperty().asString());
+	}
+}
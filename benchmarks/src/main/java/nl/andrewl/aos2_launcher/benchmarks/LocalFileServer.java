@@ -0,0 +1,76 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A tiny HTTP server on the loopback interface which serves a single file
+ * from memory, optionally with support for range requests, so downloads can
+ * be benchmarked without any real network.
+ */
+public class LocalFileServer implements AutoCloseable {
+	private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+	private static final String ETAG = "\"benchmark-file\"";
+
+	private final byte[] data;
+	private final boolean rangesSupported;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	public LocalFileServer(byte[] data, boolean rangesSupported) throws IOException {
+		this.data = data;
+		this.rangesSupported = rangesSupported;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/file", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public URI getUri() {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			var headers = exchange.getResponseHeaders();
+			headers.set("ETag", ETAG);
+			if (rangesSupported) headers.set("Accept-Ranges", "bytes");
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				headers.set("Content-Length", Long.toString(data.length));
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			int start = 0;
+			int end = data.length - 1;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			Matcher matcher = range == null ? null : RANGE_PATTERN.matcher(range);
+			boolean partial = rangesSupported && matcher != null && matcher.matches();
+			if (partial) {
+				start = Integer.parseInt(matcher.group(1));
+				end = Math.min(end, Integer.parseInt(matcher.group(2)));
+				headers.set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+			}
+			int length = end - start + 1;
+			exchange.sendResponseHeaders(partial ? 206 : 200, length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(data, start, length);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,68 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import nl.andrewl.aos2_launcher.model.Profile;
+import nl.andrewl.aos2_launcher.model.ProfileSet;
+import nl.andrewl.aos2_launcher.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading a {@link ProfileSet} with many profiles.
+ * <p>
+ *     Profiles keep their files under the launcher's base directory, which
+ *     is derived from the "user.home" property, so this benchmark points
+ *     that at a temporary directory before any launcher class reads it.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProfileSetBenchmark {
+	@Param({"1000"})
+	public int profileCount;
+
+	private Path home;
+	private Path file;
+	private ProfileSet profileSet;
+
+	@Setup
+	public void setup() throws IOException {
+		home = Files.createTempDirectory("aos2-profile-benchmark");
+		System.setProperty("user.home", home.toString());
+		Files.createDirectories(home.resolve(".ace-of-shades").resolve("profiles"));
+		file = home.resolve("profiles.json");
+		profileSet = new ProfileSet();
+		for (int i = 0; i < profileCount; i++) {
+			profileSet.addNewProfile(new Profile(UUID.randomUUID(), "Profile " + i, "player" + i, "v1.2." + (i % 10), "-Xmx1G"));
+		}
+		profileSet.save(file);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		profileSet.close();
+		FileUtils.deleteRecursive(home);
+	}
+
+	@Benchmark
+	public ProfileSet save() throws IOException {
+		profileSet.save(file);
+		return profileSet;
+	}
+
+	@Benchmark
+	public ProfileSet load() throws IOException {
+		try (ProfileSet loaded = new ProfileSet()) {
+			loaded.load(file);
+			return loaded;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package nl.andrewl.aos2_launcher.benchmarks;
+
+import nl.andrewl.aos2_launcher.model.Server;
+import nl.andrewl.aos2_launcher.view.ServerView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating a list's worth of server rows with the code-built
+ * {@link ServerView}, against the previous approach of parsing FXML for
+ * every row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerViewBenchmark {
+	@Param({"1000"})
+	public int rows;
+
+	private List<Server> servers;
+
+	@Setup
+	public void setup() {
+		FxToolkit.ensureStarted();
+		servers = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			servers.add(new Server("10.0.0." + (i % 256), 25565 + i, "Server " + i, "A test server.", 32, i % 32, 0));
+		}
+	}
+
+	@Benchmark
+	public void codeBuiltViews(Blackhole bh) {
+		for (Server server : servers) bh.consume(new ServerView(server));
+	}
+
+	@Benchmark
+	public void fxmlViews(Blackhole bh) {
+		for (Server server : servers) bh.consume(new LegacyServerView(server));
+	}
+}
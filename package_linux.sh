@@ -18,17 +18,58 @@ module_path=$(join_by ":" ${module_jars[@]})
 # Include the classes, along with all libs.
 module_path="./classes:$module_path"
 echo "Module path: $module_path"
-echo "Running jpackage..."
+app_name="Ace of Shades Launcher"
+app_version="1.0.0"
+app_description="Launcher app for Ace of Shades, a voxel-based first-person shooter."
+main_module="aos2_launcher/nl.andrewl.aos2_launcher.Launcher"
+image_dir="image/$app_name"
+
+echo "Running jpackage to build the app image..."
+rm -rf image
 jpackage \
-  --name "Ace of Shades Launcher" \
-  --app-version "1.0.0" \
-  --description "Launcher app for Ace of Shades, a voxel-based first-person shooter." \
+  --type app-image \
+  --dest image \
+  --name "$app_name" \
+  --app-version "$app_version" \
+  --description "$app_description" \
   --icon ../icon.png \
-  --linux-shortcut \
-  --linux-deb-maintainer "andrewlalisofficial@gmail.com" \
-  --linux-menu-group "Game" \
-  --linux-app-category "Game" \
   --module-path "$module_path" \
-  --module aos2_launcher/nl.andrewl.aos2_launcher.Launcher \
+  --module "$main_module" \
   --add-modules jdk.crypto.cryptoki
 
+# Make a class data sharing archive of the classes that the launcher loads
+# during startup, by starting it once with a throwaway home directory. The
+# launcher needs a display for this, so we use a virtual one if there's none.
+echo "Building the class data sharing archive..."
+runtime_java="$image_dir/lib/runtime/bin/java"
+training_home=$(mktemp -d)
+display_wrapper=()
+if [ -z "$DISPLAY" ] && command -v xvfb-run > /dev/null; then
+  display_wrapper=(xvfb-run -a)
+fi
+if "${display_wrapper[@]}" "$runtime_java" -Duser.home="$training_home" -XX:DumpLoadedClassList=classes.lst \
+    -m "$main_module" --exit-after-startup --startup-report \
+  && "$runtime_java" -Xshare:dump -XX:SharedClassListFile=classes.lst \
+    -XX:SharedArchiveFile="$image_dir/lib/app/launcher.jsa" -m "$main_module"; then
+  cfg_file="$image_dir/lib/app/$app_name.cfg"
+  if grep -q '^\[JavaOptions\]' "$cfg_file"; then
+    sed -i '/^\[JavaOptions\]/a java-options=-XX:SharedArchiveFile=$APPDIR/launcher.jsa' "$cfg_file"
+  else
+    printf '\n[JavaOptions]\njava-options=-XX:SharedArchiveFile=$APPDIR/launcher.jsa\n' >> "$cfg_file"
+  fi
+else
+  echo "Couldn't build the class data sharing archive; the launcher will start without it."
+fi
+rm -rf "$training_home" classes.lst
+
+echo "Running jpackage to build the package..."
+jpackage \
+  --app-image "$image_dir" \
+  --name "$app_name" \
+  --app-version "$app_version" \
+  --description "$app_description" \
+  --icon ../icon.png \
+  --linux-shortcut \
+  --linux-deb-maintainer "andrewlalisofficial@gmail.com" \
+  --linux-menu-group "Game" \
+  --linux-app-category "Game"
@@ -5,6 +5,7 @@ module aos2_launcher {
 	requires javafx.fxml;
 
 	requires java.net.http;
+	requires java.management;
 	requires com.google.gson;
 
 	exports nl.andrewl.aos2_launcher to javafx.graphics;
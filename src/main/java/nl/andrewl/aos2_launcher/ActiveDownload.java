@@ -0,0 +1,14 @@
+package nl.andrewl.aos2_launcher;
+
+import nl.andrewl.aos2_launcher.util.AttachableProgressReporter;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A download that's in progress, which later requests for the same file can
+ * wait on, and follow the progress of.
+ * @param future The future that completes with the downloaded file.
+ * @param reporter The reporter that the download reports its progress to.
+ */
+record ActiveDownload(CompletableFuture<Path> future, AttachableProgressReporter reporter) {}
@@ -0,0 +1,343 @@
+package nl.andrewl.aos2_launcher;
+
+import nl.andrewl.aos2_launcher.model.ClientVersionRelease;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+import nl.andrewl.aos2_launcher.model.Server;
+import nl.andrewl.aos2_launcher.util.ConsoleProgressReporter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Launches a fleet of game clients, or "bots", against a single server, for
+ * load testing. It runs from the command line, without the launcher's
+ * window:
+ * <pre>
+ * --fleet --host &lt;host&gt; --port &lt;port&gt; --count &lt;n&gt; [options]
+ * </pre>
+ * <p>
+ *     The JRE and client version are resolved just like for a normal game,
+ *     so all bots share one runtime and one client jar. Bots get generated
+ *     usernames, are started one after the other with a delay between them,
+ *     and each gets its own working directory and log file. While the fleet
+ *     runs, a status line with the number of live bots and their exit codes
+ *     is printed every few seconds, and a summary is printed once all bots
+ *     have exited. The process' exit code is 0 only if every bot exited
+ *     cleanly, or was stopped by the fleet.
+ * </p>
+ */
+class BotFleet {
+	static final String COMMAND = "--fleet";
+
+	private static final Path FLEET_DIR = Launcher.BASE_DIR.resolve("fleet");
+	private static final long STATUS_INTERVAL_SECONDS = 5;
+	private static final long STOP_GRACE_PERIOD_SECONDS = 10;
+	private static final String USAGE = """
+			Usage: --fleet --host <host> --port <port> --count <n> [options]
+			Options:
+			  --version <tag>       The client version to run, like v1.2.3. Defaults to the newest release.
+			  --username <prefix>   The prefix for generated usernames. Defaults to "bot".
+			  --interval <seconds>  The time between starting bots. Defaults to 1.
+			  --max-heap <size>     The maximum heap size of each bot, like 256m. Defaults to the JVM's default.
+			  --jvm-args <args>     Extra JVM arguments for each bot, separated by spaces.
+			  --duration <seconds>  Stop all bots after this long. Defaults to running until they exit.""";
+
+	/**
+	 * The fleet's settings, from the command line.
+	 */
+	record Options(
+			String host,
+			int port,
+			int count,
+			String version,
+			String usernamePrefix,
+			double intervalSeconds,
+			String maxHeap,
+			List<String> jvmArgs,
+			long durationSeconds
+	) {
+		static Options parse(String[] args) {
+			String host = null;
+			int port = -1;
+			int count = -1;
+			String version = null;
+			String usernamePrefix = "bot";
+			double intervalSeconds = 1;
+			String maxHeap = null;
+			List<String> jvmArgs = new ArrayList<>();
+			long durationSeconds = -1;
+			for (int i = 0; i < args.length; i++) {
+				String name = args[i];
+				if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + name + ".");
+				String value = args[++i];
+				switch (name) {
+					case "--host" -> host = value;
+					case "--port" -> port = Integer.parseInt(value);
+					case "--count" -> count = Integer.parseInt(value);
+					case "--version" -> version = value;
+					case "--username" -> usernamePrefix = value;
+					case "--interval" -> intervalSeconds = Double.parseDouble(value);
+					case "--max-heap" -> maxHeap = value;
+					case "--jvm-args" -> {
+						if (!value.isBlank()) jvmArgs.addAll(Arrays.asList(value.trim().split("\\s+")));
+					}
+					case "--duration" -> durationSeconds = Long.parseLong(value);
+					default -> throw new IllegalArgumentException("Unknown option " + name + ".");
+				}
+			}
+			if (host == null) throw new IllegalArgumentException("Missing --host.");
+			if (port < 1 || port > 65535) throw new IllegalArgumentException("Missing or invalid --port.");
+			if (count < 1) throw new IllegalArgumentException("Missing or invalid --count.");
+			if (intervalSeconds < 0) throw new IllegalArgumentException("Invalid --interval.");
+			return new Options(host, port, count, version, usernamePrefix, intervalSeconds, maxHeap, jvmArgs, durationSeconds);
+		}
+	}
+
+	/**
+	 * One client process in the fleet.
+	 */
+	private static class Bot {
+		final String username;
+		final Path dir;
+		volatile GameSession session;
+		volatile Integer exitCode;
+		/**
+		 * Set if the bot never ran, because it couldn't start, or the fleet
+		 * was stopped first.
+		 */
+		volatile String notStartedReason;
+		volatile boolean stopRequested = false;
+
+		Bot(String username, Path dir) {
+			this.username = username;
+			this.dir = dir;
+		}
+	}
+
+	private final Options options;
+	private final Server server;
+	private final Path jrePath;
+	private final Path clientJarPath;
+	private final List<Bot> bots = new ArrayList<>();
+	private final AtomicInteger remainingBots;
+	private final CompletableFuture<Void> allExited = new CompletableFuture<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "bot-fleet");
+		t.setDaemon(true);
+		return t;
+	});
+	private final long startNanos = System.nanoTime();
+	private volatile boolean stopping = false;
+
+	private BotFleet(Options options, Path jrePath, Path clientJarPath, Path runDir) {
+		this.options = options;
+		this.server = new Server(options.host(), options.port(), null, null, 0, 0, 0);
+		this.jrePath = jrePath;
+		this.clientJarPath = clientJarPath;
+		int digits = Integer.toString(options.count()).length();
+		for (int i = 1; i <= options.count(); i++) {
+			String username = options.usernamePrefix() + String.format("%0" + digits + "d", i);
+			bots.add(new Bot(username, runDir.resolve(username)));
+		}
+		this.remainingBots = new AtomicInteger(options.count());
+	}
+
+	/**
+	 * Runs a fleet of bots, until they've all exited.
+	 * @param args The command-line arguments, after {@link #COMMAND}.
+	 * @return The exit code for the launcher.
+	 */
+	static int run(String[] args) {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			return 2;
+		}
+		Path runDir = FLEET_DIR.resolve(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+		ProgressReporter reporter = new ConsoleProgressReporter(System.out);
+		Path jrePath;
+		Path clientJarPath;
+		try {
+			Launcher.createDirectories();
+			Files.createDirectories(runDir);
+			jrePath = SystemVersionValidator.getJreExecutablePath(reporter).join();
+			String version = options.version();
+			if (version == null) {
+				List<ClientVersionRelease> releases = VersionFetcher.INSTANCE.getAvailableReleases().join();
+				if (releases.isEmpty()) throw new IOException("Couldn't find any releases.");
+				version = releases.get(0).tag();
+			}
+			clientJarPath = VersionFetcher.INSTANCE.getVersionFile(version, reporter).join();
+		} catch (IOException | CompletionException e) {
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			System.err.println("Couldn't prepare the fleet: " + cause.getMessage());
+			return 1;
+		}
+		System.out.printf("Starting %d bots against %s:%d with %s, logging to %s%n",
+				options.count(), options.host(), options.port(), clientJarPath.getFileName(), runDir);
+		return new BotFleet(options, jrePath, clientJarPath, runDir).launch();
+	}
+
+	private int launch() {
+		Thread shutdownHook = new Thread(() -> {
+			stopAll();
+			try {
+				allExited.get(STOP_GRACE_PERIOD_SECONDS + 1, TimeUnit.SECONDS);
+			} catch (InterruptedException | ExecutionException | TimeoutException ignored) {}
+		}, "bot-fleet-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+		long intervalMillis = (long) (options.intervalSeconds() * 1000);
+		for (int i = 0; i < bots.size(); i++) {
+			Bot bot = bots.get(i);
+			scheduler.schedule(() -> startBot(bot), i * intervalMillis, TimeUnit.MILLISECONDS);
+		}
+		scheduler.scheduleAtFixedRate(this::printStatus, STATUS_INTERVAL_SECONDS, STATUS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		if (options.durationSeconds() > 0) {
+			scheduler.schedule(() -> {
+				System.out.println("Fleet duration is over, stopping all bots.");
+				stopAll();
+			}, options.durationSeconds(), TimeUnit.SECONDS);
+		}
+
+		allExited.join();
+		scheduler.shutdownNow();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException ignored) {
+			// We're already shutting down.
+		}
+		return printSummary();
+	}
+
+	private void startBot(Bot bot) {
+		if (stopping) {
+			markNotStarted(bot, "the fleet was stopped");
+			return;
+		}
+		List<String> jvmArgs = new ArrayList<>(options.jvmArgs());
+		if (options.maxHeap() != null) jvmArgs.add("-Xmx" + options.maxHeap());
+		ClassDataArchives.Launch cds = ClassDataArchives.prepare(jrePath, clientJarPath, String.join(" ", jvmArgs));
+		jvmArgs.addAll(cds.jvmArgs());
+		List<String> command = GameRunner.buildCommand(jrePath, clientJarPath, jvmArgs, server, bot.username);
+		GameSession session;
+		try {
+			Files.createDirectories(bot.dir);
+			session = GameSession.start(new ProcessBuilder(command).directory(bot.dir.toFile()), clientJarPath, bot.dir.resolve("game.log"));
+		} catch (IOException e) {
+			ClassDataArchives.finish(cds, -1);
+			markNotStarted(bot, e.getMessage());
+			System.out.println(bot.username + " couldn't start: " + e.getMessage());
+			return;
+		}
+		bot.session = session;
+		System.out.println("Started " + bot.username + " (pid " + session.getProcess().pid() + ")");
+		session.getExitFuture().thenAccept(exitCode -> {
+			bot.exitCode = exitCode;
+			ClassDataArchives.finish(cds, exitCode);
+			if (!bot.stopRequested) System.out.println(bot.username + " exited with code " + exitCode);
+			onBotDone();
+		});
+		// The fleet may have been stopped while this bot was starting.
+		if (stopping) stop(bot);
+	}
+
+	private void markNotStarted(Bot bot, String reason) {
+		bot.notStartedReason = reason;
+		onBotDone();
+	}
+
+	private void onBotDone() {
+		if (remainingBots.decrementAndGet() == 0) allExited.complete(null);
+	}
+
+	/**
+	 * Stops all running bots, and any that haven't been started yet. Bots
+	 * that don't exit within a grace period are killed.
+	 */
+	private void stopAll() {
+		stopping = true;
+		for (Bot bot : bots) {
+			if (bot.session != null) stop(bot);
+		}
+	}
+
+	private void stop(Bot bot) {
+		Process process = bot.session.getProcess();
+		if (bot.stopRequested || !process.isAlive()) return;
+		bot.stopRequested = true;
+		process.destroy();
+		process.onExit()
+				.orTimeout(STOP_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS)
+				.exceptionally(throwable -> {
+					process.destroyForcibly();
+					return null;
+				});
+	}
+
+	private void printStatus() {
+		int running = 0;
+		int notStarted = 0;
+		Map<Integer, Integer> exitCodes = new TreeMap<>();
+		for (Bot bot : bots) {
+			if (bot.exitCode != null) {
+				exitCodes.merge(bot.exitCode, 1, Integer::sum);
+			} else if (bot.session != null && bot.session.getProcess().isAlive()) {
+				running++;
+			} else if (bot.session == null) {
+				notStarted++;
+			}
+		}
+		long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+		System.out.printf("[%d:%02d] %d/%d running, %d not started, exit codes: %s%n",
+				elapsedSeconds / 60, elapsedSeconds % 60, running, bots.size(), notStarted, exitCodes.isEmpty() ? "none" : formatExitCodes(exitCodes));
+	}
+
+	/**
+	 * Prints a summary of how every bot ended.
+	 * @return The exit code for the launcher: 0 if every bot exited cleanly
+	 * or was stopped by the fleet, or 1 otherwise.
+	 */
+	private int printSummary() {
+		int stopped = 0;
+		Map<Integer, Integer> exitCodes = new TreeMap<>();
+		List<Bot> failed = new ArrayList<>();
+		for (Bot bot : bots) {
+			if (bot.exitCode == null) {
+				if (!stopping) failed.add(bot);
+			} else if (bot.stopRequested) {
+				stopped++;
+			} else {
+				exitCodes.merge(bot.exitCode, 1, Integer::sum);
+				if (bot.exitCode != 0) failed.add(bot);
+			}
+		}
+		long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+		System.out.printf("Fleet finished after %s. %d bots stopped by the fleet, exit codes of the others: %s%n",
+				Duration.ofSeconds(elapsedSeconds).toString().substring(2).toLowerCase(), stopped, exitCodes.isEmpty() ? "none" : formatExitCodes(exitCodes));
+		for (Bot bot : failed) {
+			if (bot.exitCode == null) {
+				System.out.println("  " + bot.username + " didn't start: " + bot.notStartedReason);
+			} else {
+				System.out.println("  " + bot.username + " exited with code " + bot.exitCode + ", see " + bot.dir.resolve("game.log"));
+			}
+		}
+		return failed.isEmpty() ? 0 : 1;
+	}
+
+	private static String formatExitCodes(Map<Integer, Integer> exitCodes) {
+		StringJoiner joiner = new StringJoiner(", ");
+		exitCodes.forEach((code, count) -> joiner.add(code + " (" + count + "x)"));
+		return joiner.toString();
+	}
+}
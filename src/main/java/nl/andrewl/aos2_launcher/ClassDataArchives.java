@@ -0,0 +1,191 @@
+package nl.andrewl.aos2_launcher;
+
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manages dynamic AppCDS archives for client versions, so that the JVM can
+ * map the client's (and LWJGL's) classes from an archive, instead of
+ * loading and verifying them from the jar on every launch.
+ * <p>
+ *     The first time a client version is launched with some JRE, the game
+ *     runs with {@code -XX:ArchiveClassesAtExit}, so the JVM writes an
+ *     archive of every class it loaded when the game exits. Later launches
+ *     use that archive with {@code -XX:SharedArchiveFile}.
+ * </p>
+ * <p>
+ *     Archives are stored next to the client jar, and their file names
+ *     contain a key that's derived from the JRE build, and the jar's hash and
+ *     modification time, since the JVM won't use an archive for a jar whose
+ *     modification time changed. When any of those change, the key doesn't
+ *     match any more, so a new archive is made and the stale one is removed.
+ * </p>
+ */
+class ClassDataArchives {
+	private static final String ARCHIVE_SUFFIX = ".jsa";
+
+	private static final Counter ARCHIVES_CREATED = Metrics.counter("cds_archives_created_total", "Number of class data sharing archives created for client versions.");
+	private static final Counter ARCHIVED_LAUNCHES = Metrics.counter("cds_archived_launches_total", "Number of game launches that used a class data sharing archive.");
+
+	/**
+	 * Archives that a running game is currently creating, so that games that
+	 * are launched at the same time don't all write the same archive.
+	 */
+	private static final Set<Path> archivesInProgress = ConcurrentHashMap.newKeySet();
+	/**
+	 * Jar hashes, mapped by the jar's path, size and modification time, so
+	 * that we only hash each jar once.
+	 */
+	private static final Map<String, String> jarHashes = new ConcurrentHashMap<>();
+
+	/**
+	 * The class data sharing settings for one game launch.
+	 * @param jvmArgs The extra JVM arguments to launch the game with.
+	 * @param clientJar The client jar file.
+	 * @param pendingArchive The archive that the game will create when it
+	 *                       exits, or null.
+	 */
+	record Launch(List<String> jvmArgs, Path clientJar, Path pendingArchive) {
+		private static Launch none(Path clientJar) {
+			return new Launch(List.of(), clientJar, null);
+		}
+	}
+
+	/**
+	 * Works out the class data sharing arguments for launching a client.
+	 * When the game exits, {@link #finish} must be called with the result.
+	 * @param javaExecutable The java executable that runs the game.
+	 * @param clientJar The client jar file.
+	 * @param userJvmArgs The JVM arguments from the profile. If these already
+	 *                    configure class data sharing, we leave it alone.
+	 * @return The launch settings.
+	 */
+	static Launch prepare(Path javaExecutable, Path clientJar, String userJvmArgs) {
+		if (userJvmArgs != null && (userJvmArgs.contains("-Xshare") || userJvmArgs.contains("SharedArchiveFile") || userJvmArgs.contains("ArchiveClassesAtExit"))) {
+			return Launch.none(clientJar);
+		}
+		String key;
+		try {
+			key = getKey(javaExecutable, clientJar);
+		} catch (IOException e) {
+			System.err.println("Couldn't check the class data sharing archive for " + clientJar.getFileName() + ": " + e.getMessage());
+			return Launch.none(clientJar);
+		}
+		Path archive = clientJar.resolveSibling(clientJar.getFileName() + "." + key + ARCHIVE_SUFFIX);
+		if (Files.isRegularFile(archive)) {
+			ARCHIVED_LAUNCHES.increment();
+			return new Launch(List.of("-XX:SharedArchiveFile=" + archive.toAbsolutePath()), clientJar, null);
+		}
+		if (!archivesInProgress.add(archive)) return Launch.none(clientJar);
+		return new Launch(List.of("-XX:ArchiveClassesAtExit=" + getTempFile(archive).toAbsolutePath()), clientJar, archive);
+	}
+
+	/**
+	 * Called once a game has exited. If it was creating an archive, the
+	 * archive is moved into place, replacing any stale archives for the same
+	 * client jar. Archives are only kept if the game exited normally.
+	 * @param launch The launch settings that the game was started with.
+	 * @param exitCode The game's exit code.
+	 */
+	static void finish(Launch launch, int exitCode) {
+		Path archive = launch.pendingArchive();
+		if (archive == null) return;
+		Path tmpFile = getTempFile(archive);
+		try {
+			if (exitCode == 0 && Files.isRegularFile(tmpFile) && Files.size(tmpFile) > 0) {
+				Files.move(tmpFile, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				ARCHIVES_CREATED.increment();
+				deleteArchives(launch.clientJar(), archive);
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't save the class data sharing archive " + archive.getFileName() + ": " + e.getMessage());
+		} finally {
+			try {
+				Files.deleteIfExists(tmpFile);
+			} catch (IOException e) {
+				System.err.println("Couldn't remove " + tmpFile.getFileName() + ": " + e.getMessage());
+			}
+			archivesInProgress.remove(archive);
+		}
+	}
+
+	/**
+	 * Deletes all archives for a client jar.
+	 * @param clientJar The client jar file.
+	 */
+	static void deleteArchives(Path clientJar) {
+		deleteArchives(clientJar, null);
+	}
+
+	private static void deleteArchives(Path clientJar, Path except) {
+		String prefix = clientJar.getFileName() + ".";
+		try (var s = Files.list(clientJar.getParent())) {
+			for (Path file : s.toList()) {
+				String name = file.getFileName().toString();
+				if (name.startsWith(prefix) && name.endsWith(ARCHIVE_SUFFIX) && !file.equals(except)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't remove old class data sharing archives for " + clientJar.getFileName() + ": " + e.getMessage());
+		}
+	}
+
+	private static Path getTempFile(Path archive) {
+		return archive.resolveSibling(archive.getFileName() + ".tmp");
+	}
+
+	/**
+	 * Computes the key for a client jar's archive, which changes whenever
+	 * the JRE build or the jar changes.
+	 */
+	private static String getKey(Path javaExecutable, Path clientJar) throws IOException {
+		MessageDigest digest = newDigest();
+		// The JRE's release file lists its exact build. Its executable's size is a fallback for JREs without one.
+		Path releaseFile = javaExecutable.toAbsolutePath().getParent().resolveSibling("release");
+		if (Files.isRegularFile(releaseFile)) digest.update(Files.readAllBytes(releaseFile));
+		long jarSize = Files.size(clientJar);
+		long jarModified = Files.getLastModifiedTime(clientJar).toMillis();
+		String jarCacheKey = clientJar.toAbsolutePath() + ":" + jarSize + ":" + jarModified;
+		String jarHash = jarHashes.get(jarCacheKey);
+		if (jarHash == null) {
+			jarHash = hash(clientJar);
+			jarHashes.put(jarCacheKey, jarHash);
+		}
+		String keyData = Files.size(javaExecutable) + "\n" + jarHash + "\n" + jarModified;
+		digest.update(keyData.getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().formatHex(digest.digest(), 0, 8);
+	}
+
+	private static String hash(Path file) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[64 * 1024];
+			int readCount;
+			while ((readCount = in.read(buffer)) != -1) digest.update(buffer, 0, readCount);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
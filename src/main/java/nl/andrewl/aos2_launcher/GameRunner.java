@@ -3,9 +3,14 @@ package nl.andrewl.aos2_launcher;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.stage.Window;
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Gauge;
+import nl.andrewl.aos2_launcher.metrics.Histogram;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
 import nl.andrewl.aos2_launcher.model.Profile;
 import nl.andrewl.aos2_launcher.model.ProgressReporter;
 import nl.andrewl.aos2_launcher.model.Server;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -14,10 +19,24 @@ import java.util.Arrays;
 import java.util.List;
 
 public class GameRunner {
+	private static final String GAME_LOG_FILE = "game.log";
+	/**
+	 * The number of lines of the game's output to show when it crashes.
+	 */
+	private static final int CRASH_OUTPUT_LINES = 10;
+
+	private static final Histogram LAUNCH_TIME = Metrics.histogram("game_launch_seconds", "Time from clicking play until the game process is started.");
+	private static final Histogram SESSION_TIME = Metrics.histogram("game_session_seconds", "Time that the game process was running.");
+	private static final Counter LAUNCH_FAILURES = Metrics.counter("game_launch_failures_total", "Number of game launches that failed before the game could start.");
+	private static final Counter ERROR_EXITS = Metrics.counter("game_error_exits_total", "Number of times the game exited with a non-zero exit code.");
+	private static final Gauge RUNNING_GAMES = Metrics.gauge("games_running", "Number of game processes that are currently running.");
+
 	public void run(Profile profile, Server server, ProgressReporter progressReporter, Window owner) {
+		long launchStart = System.nanoTime();
 		SystemVersionValidator.getJreExecutablePath(progressReporter)
 				.whenCompleteAsync((jrePath, throwable) -> {
 					if (throwable != null) {
+						LAUNCH_FAILURES.increment();
 						showPopup(
 								owner,
 								Alert.AlertType.ERROR,
@@ -28,46 +47,78 @@ public class GameRunner {
 								.whenCompleteAsync((clientJarPath, throwable2) -> {
 									progressReporter.disableProgress();
 									if (throwable2 != null) {
+										LAUNCH_FAILURES.increment();
 										showPopup(
 												owner,
 												Alert.AlertType.ERROR,
 												"An error occurred while ensuring you've got the correct client version: " + throwable2.getMessage()
 										);
 									} else {
-										startGame(owner, profile, server, jrePath, clientJarPath);
+										startGame(owner, profile, server, jrePath, clientJarPath, launchStart);
 									}
-								});
+								}, VirtualThreads.executor());
 					}
-				});
+				}, VirtualThreads.executor());
 	}
 
-	private void startGame(Window owner, Profile profile, Server server, Path jrePath, Path clientJarPath) {
-		List<String> command = new ArrayList<>();
-		command.add(jrePath.toAbsolutePath().toString());
+	private void startGame(Window owner, Profile profile, Server server, Path jrePath, Path clientJarPath, long launchStart) {
+		List<String> jvmArgs = new ArrayList<>();
 		if (profile.getJvmArgs() != null && !profile.getJvmArgs().isBlank()) {
-			command.addAll(Arrays.asList(profile.getJvmArgs().split("\\s+")));
+			jvmArgs.addAll(Arrays.asList(profile.getJvmArgs().split("\\s+")));
 		}
-		command.add("-jar");
-		command.add(clientJarPath.toAbsolutePath().toString());
-		command.add(server.getHost());
-		command.add(Integer.toString(server.getPort()));
-		command.add(profile.getUsername());
-		String[] cmd = command.toArray(new String[0]);
+		ClassDataArchives.Launch cds = ClassDataArchives.prepare(jrePath, clientJarPath, profile.getJvmArgs());
+		jvmArgs.addAll(cds.jvmArgs());
+		List<String> command = buildCommand(jrePath, clientJarPath, jvmArgs, server, profile.getUsername());
+		ProcessBuilder processBuilder = new ProcessBuilder()
+				.command(command)
+				.directory(profile.getDir().toFile());
+		GameSession session;
 		try {
-			Process p = new ProcessBuilder()
-					.command(cmd)
-					.directory(profile.getDir().toFile())
-					.inheritIO()
-					.start();
-			int result = p.waitFor();
-			if (result != 0) {
-				showPopup(owner, Alert.AlertType.ERROR, "The game exited with error code: " + result);
-			}
+			session = GameSession.start(processBuilder, clientJarPath, profile.getDir().resolve("logs").resolve(GAME_LOG_FILE));
 		} catch (IOException e) {
+			LAUNCH_FAILURES.increment();
+			ClassDataArchives.finish(cds, -1);
 			showPopup(owner, Alert.AlertType.ERROR, "An error occurred while starting the game: " + e.getMessage());
-		} catch (InterruptedException e) {
-			showPopup(owner, Alert.AlertType.ERROR, "The game was interrupted: " + e.getMessage());
+			return;
 		}
+		LAUNCH_TIME.recordSince(launchStart);
+		long sessionStart = System.nanoTime();
+		RUNNING_GAMES.increment();
+		session.getExitFuture().thenAccept(result -> {
+			RUNNING_GAMES.decrement();
+			SESSION_TIME.recordSince(sessionStart);
+			ClassDataArchives.finish(cds, result);
+			if (result != 0) {
+				ERROR_EXITS.increment();
+				StringBuilder message = new StringBuilder("The game exited with error code: " + result);
+				List<String> output = session.getRecentOutput(CRASH_OUTPUT_LINES);
+				if (!output.isEmpty()) {
+					message.append("\n\nLast output:\n").append(String.join("\n", output));
+				}
+				showPopup(owner, Alert.AlertType.ERROR, message.toString());
+			}
+		});
+	}
+
+	/**
+	 * Builds the command that starts the game client and connects to a server.
+	 * @param jrePath The java executable to run the client with.
+	 * @param clientJarPath The client jar file.
+	 * @param jvmArgs Any arguments for the JVM.
+	 * @param server The server to connect to.
+	 * @param username The username to join the server with.
+	 * @return The command.
+	 */
+	static List<String> buildCommand(Path jrePath, Path clientJarPath, List<String> jvmArgs, Server server, String username) {
+		List<String> command = new ArrayList<>();
+		command.add(jrePath.toAbsolutePath().toString());
+		command.addAll(jvmArgs);
+		command.add("-jar");
+		command.add(clientJarPath.toAbsolutePath().toString());
+		command.add(server.getHost());
+		command.add(Integer.toString(server.getPort()));
+		command.add(username);
+		return command;
 	}
 
 	private void showPopup(Window owner, Alert.AlertType type, String text) {
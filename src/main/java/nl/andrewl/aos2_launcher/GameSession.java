@@ -0,0 +1,171 @@
+package nl.andrewl.aos2_launcher;
+
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+import nl.andrewl.aos2_launcher.util.BackgroundLogWriter;
+import nl.andrewl.aos2_launcher.util.LogRingBuffer;
+import nl.andrewl.aos2_launcher.util.ProcessOutputPump;
+import nl.andrewl.aos2_launcher.util.RotatingLogWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A running game process, whose output is captured without tying up any
+ * thread of its own. Its standard output and error are read by a shared
+ * {@link ProcessOutputPump}, and kept in an in-memory buffer with the most
+ * recent output, which we can show when the game crashes. The output is
+ * also queued for a shared {@link BackgroundLogWriter}, which writes it to a
+ * size-rotated log file, so that a slow disk never holds up the pump, and
+ * with it, the game. The game's exit is noticed with
+ * {@link Process#onExit()}, instead of a thread waiting for it.
+ */
+class GameSession {
+	private static final int PUMP_THREADS = 2;
+	private static final int RECENT_OUTPUT_BYTES = 64 * 1024;
+	private static final long MAX_LOG_FILE_SIZE = 5 * 1024 * 1024;
+	private static final int MAX_OLD_LOG_FILES = 3;
+	private static final long MAX_QUEUED_LOG_BYTES = 8 * 1024 * 1024;
+
+	private static final ProcessOutputPump OUTPUT_PUMP = new ProcessOutputPump(PUMP_THREADS);
+	private static final BackgroundLogWriter LOG_WRITER = new BackgroundLogWriter("game-log-writer", MAX_QUEUED_LOG_BYTES);
+	private static final Counter LOG_WRITE_FAILURES = Metrics.counter("game_log_write_failures_total", "Number of times that game output couldn't be written to its log file.");
+	private static final Counter LOG_DROPPED_BYTES = Metrics.counter("game_log_dropped_bytes_total", "Number of bytes of game output that were left out of its log file, because the log writer couldn't keep up.");
+
+	/**
+	 * The sessions whose game is still running.
+	 */
+	private static final Set<GameSession> liveSessions = ConcurrentHashMap.newKeySet();
+
+	private final Process process;
+	private final Path clientJar;
+	private final LogRingBuffer recentOutput = new LogRingBuffer(RECENT_OUTPUT_BYTES);
+	private final BackgroundLogWriter.Log log;
+	private final CompletableFuture<Integer> exitFuture;
+
+	private GameSession(Process process, Path clientJar, BackgroundLogWriter.Log log) {
+		this.process = process;
+		this.clientJar = clientJar.toAbsolutePath().normalize();
+		this.log = log;
+		// Added before we look at the exit, so that we can't remove it before adding it.
+		liveSessions.add(this);
+		var stdoutDone = OUTPUT_PUMP.pump(process.getInputStream(), () -> !process.isAlive(), this::write);
+		var stderrDone = OUTPUT_PUMP.pump(process.getErrorStream(), () -> !process.isAlive(), this::write);
+		// Only report the exit once all output was captured, so that it's complete when we look at it.
+		this.exitFuture = process.onExit()
+				.thenCompose(p -> CompletableFuture.allOf(stdoutDone, stderrDone)
+						.handle((v, throwable) -> p.exitValue()))
+				.whenComplete((exitCode, throwable) -> {
+					liveSessions.remove(this);
+					writeLogLine("Game exited with code " + exitCode + " at " + LocalDateTime.now());
+					if (log != null) log.close();
+				});
+	}
+
+	/**
+	 * Starts a game process, and starts capturing its output. The process'
+	 * input is closed, since the game doesn't read any.
+	 * @param processBuilder The process to start. Its output must not be
+	 *                       redirected.
+	 * @param clientJar The client jar that the game runs, which must not be
+	 *                  removed while it's running.
+	 * @param logFile The log file to append the game's output to. Older
+	 *                output is rotated into numbered files next to it.
+	 * @return The session.
+	 * @throws IOException If the process couldn't be started.
+	 */
+	static GameSession start(ProcessBuilder processBuilder, Path clientJar, Path logFile) throws IOException {
+		BackgroundLogWriter.Log log = openLog(logFile);
+		if (log != null) {
+			byte[] header = ("Starting game at " + LocalDateTime.now() + ": " + String.join(" ", processBuilder.command()) + System.lineSeparator())
+					.getBytes(StandardCharsets.UTF_8);
+			log.write(header, 0, header.length);
+		}
+		Process process;
+		try {
+			process = processBuilder.start();
+		} catch (IOException e) {
+			if (log != null) log.close();
+			throw e;
+		}
+		try {
+			process.getOutputStream().close();
+		} catch (IOException ignored) {}
+		return new GameSession(process, clientJar, log);
+	}
+
+	private static BackgroundLogWriter.Log openLog(Path logFile) {
+		RotatingLogWriter writer;
+		try {
+			writer = new RotatingLogWriter(logFile, MAX_LOG_FILE_SIZE, MAX_OLD_LOG_FILES);
+		} catch (IOException e) {
+			// The game should still be playable if its log can't be written.
+			System.err.println("Couldn't open game log " + logFile + ": " + e.getMessage());
+			return null;
+		}
+		AtomicBoolean logFailed = new AtomicBoolean(false);
+		return LOG_WRITER.open(writer, e -> {
+			LOG_WRITE_FAILURES.increment();
+			// Only complain once per session, since the output keeps coming.
+			if (logFailed.compareAndSet(false, true)) {
+				System.err.println("Couldn't write game log " + logFile + ": " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Checks if any running game uses a client jar.
+	 * @param clientJar The client jar file.
+	 * @return True if a game that runs the jar hasn't exited yet.
+	 */
+	static boolean isUsing(Path clientJar) {
+		Path file = clientJar.toAbsolutePath().normalize();
+		for (GameSession session : liveSessions) {
+			if (session.clientJar.equals(file)) return true;
+		}
+		return false;
+	}
+
+	public Process getProcess() {
+		return process;
+	}
+
+	/**
+	 * Gets a future that completes with the game's exit code, once it has
+	 * exited and all of its output has been captured.
+	 * @return The future.
+	 */
+	public CompletableFuture<Integer> getExitFuture() {
+		return exitFuture;
+	}
+
+	/**
+	 * Gets the last lines that the game printed.
+	 * @param maxLines The maximum number of lines to get.
+	 * @return The lines, oldest first.
+	 */
+	public List<String> getRecentOutput(int maxLines) {
+		return recentOutput.getLastLines(maxLines);
+	}
+
+	private void write(byte[] bytes, int offset, int length) {
+		recentOutput.write(bytes, offset, length);
+		writeLog(bytes, offset, length);
+	}
+
+	private void writeLogLine(String line) {
+		byte[] bytes = (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		writeLog(bytes, 0, bytes.length);
+	}
+
+	private void writeLog(byte[] bytes, int offset, int length) {
+		if (log != null && !log.write(bytes, offset, length)) LOG_DROPPED_BYTES.add(length);
+	}
+}
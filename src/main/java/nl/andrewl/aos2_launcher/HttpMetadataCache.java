@@ -0,0 +1,142 @@
+package nl.andrewl.aos2_launcher;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import nl.andrewl.aos2_launcher.util.NetworkService;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A persistent cache for small HTTP resources like GitHub API responses. Each
+ * response body is stored on disk together with its ETag and Last-Modified
+ * headers, and later requests for the same URI are made conditional, so that
+ * an unchanged resource is answered with a cheap 304 and read from disk.
+ * Conditional requests answered with a 304 don't count against GitHub's rate
+ * limit.
+ */
+public class HttpMetadataCache {
+	private static final Gson GSON = new Gson();
+
+	private final NetworkService network;
+	private final Path cacheDir;
+
+	public HttpMetadataCache(NetworkService network, Path cacheDir) {
+		this.network = network;
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Gets the body of the resource at the given URI, using the cached copy
+	 * if the server says it hasn't changed. If the server can't be reached
+	 * at all, a previously cached copy is used, if there is one.
+	 * @param uri The URI to request.
+	 * @param timeout The request timeout.
+	 * @return A future that completes with the path to a file containing
+	 * the response body.
+	 */
+	public CompletableFuture<Path> get(URI uri, Duration timeout) {
+		final Path bodyFile;
+		final Path metaFile;
+		final Path tmpFile;
+		final CachedResponseMeta meta;
+		try {
+			Files.createDirectories(cacheDir);
+			String key = cacheKey(uri);
+			bodyFile = cacheDir.resolve(key + ".body");
+			metaFile = cacheDir.resolve(key + ".meta.json");
+			tmpFile = Files.createTempFile(cacheDir, key, ".tmp");
+			meta = Files.exists(bodyFile) ? CachedResponseMeta.load(metaFile) : null;
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		HttpRequest.Builder requestBuilder = network.request(uri).GET().timeout(timeout);
+		if (meta != null && meta.etag() != null) requestBuilder.header("If-None-Match", meta.etag());
+		if (meta != null && meta.lastModified() != null) requestBuilder.header("If-Modified-Since", meta.lastModified());
+		HttpResponse.BodyHandler<Path> handler = responseInfo -> responseInfo.statusCode() == 200
+				? HttpResponse.BodySubscribers.ofFile(tmpFile)
+				: HttpResponse.BodySubscribers.replacing(null);
+		return network.sendAsync(requestBuilder.build(), handler)
+				.handleAsync((resp, throwable) -> {
+					try {
+						if (throwable != null) {
+							Files.deleteIfExists(tmpFile);
+							if (meta != null) {
+								System.err.println("Couldn't reach " + uri + ", using cached response: " + throwable.getMessage());
+								return bodyFile;
+							}
+							throw new IOException("Request to " + uri + " failed: " + throwable.getMessage(), throwable);
+						}
+						if (resp.statusCode() == 304 && meta != null) {
+							Files.deleteIfExists(tmpFile);
+							return bodyFile;
+						}
+						if (resp.statusCode() != 200) {
+							Files.deleteIfExists(tmpFile);
+							throw new IOException("Request to " + uri + " failed: " + resp.statusCode());
+						}
+						Files.move(tmpFile, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						new CachedResponseMeta(
+								uri.toString(),
+								resp.headers().firstValue("ETag").orElse(null),
+								resp.headers().firstValue("Last-Modified").orElse(null)
+						).save(metaFile);
+						return bodyFile;
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, VirtualThreads.executor());
+	}
+
+	private static String cacheKey(URI uri) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return HexFormat.of().formatHex(digest.digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private record CachedResponseMeta(String uri, String etag, String lastModified) {
+		static CachedResponseMeta load(Path file) {
+			if (!Files.exists(file)) return null;
+			try (var reader = Files.newBufferedReader(file)) {
+				JsonObject obj = GSON.fromJson(reader, JsonObject.class);
+				return new CachedResponseMeta(getString(obj, "uri"), getString(obj, "etag"), getString(obj, "lastModified"));
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Ignoring invalid cache metadata in " + file + ": " + e.getMessage());
+				return null;
+			}
+		}
+
+		void save(Path file) throws IOException {
+			JsonObject obj = new JsonObject();
+			obj.addProperty("uri", uri);
+			obj.addProperty("etag", etag);
+			obj.addProperty("lastModified", lastModified);
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.writeString(tmp, GSON.toJson(obj));
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		private static String getString(JsonObject obj, String key) {
+			JsonElement element = obj.get(key);
+			return (element == null || element.isJsonNull()) ? null : element.getAsString();
+		}
+	}
+}
@@ -1,14 +1,21 @@
 package nl.andrewl.aos2_launcher;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+import nl.andrewl.aos2_launcher.metrics.StartupTimer;
 import nl.andrewl.aos2_launcher.util.FileUtils;
 import nl.andrewl.aos2_launcher.util.FxUtils;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main starting point for the launcher app.
@@ -16,20 +23,100 @@ import java.nio.file.Path;
 public class Launcher extends Application {
 	public static final Path BASE_DIR = Path.of(System.getProperty("user.home"), ".ace-of-shades");
 	public static final Path VERSIONS_DIR = BASE_DIR.resolve("versions");
+	public static final Path JAR_STORE_DIR = BASE_DIR.resolve("jar-store");
 	public static final Path PROFILES_FILE = BASE_DIR.resolve("profiles.json");
 	public static final Path PROFILES_DIR =  BASE_DIR.resolve("profiles");
 	public static final Path JRE_PATH = BASE_DIR.resolve("jre");
+	public static final Path CACHE_DIR = BASE_DIR.resolve("cache");
+	public static final Path METRICS_FILE = BASE_DIR.resolve("metrics.prom");
 	public static final String[] STANDARD_STYLESHEETS = {"/font/fonts.css", "/styles.css"};
 
+	public static final String[] FONTS = {
+			"/font/JetBrainsMono-Regular.ttf",
+			"/font/JetBrainsMono-Bold.ttf",
+			"/font/JetBrainsMono-Light.ttf",
+			"/font/JetBrainsMono-Italic.ttf",
+			"/font/JetBrainsMono-BoldItalic.ttf",
+			"/font/JetBrainsMono-LightItalic.ttf"
+	};
+
+	/**
+	 * Print a report of how long each startup milestone took, when the
+	 * launcher exits.
+	 */
+	private static final String STARTUP_REPORT_FLAG = "--startup-report";
+	/**
+	 * Exit as soon as startup is done, which is used to record which classes
+	 * the launcher loads, for its class data sharing archive.
+	 */
+	private static final String EXIT_AFTER_STARTUP_FLAG = "--exit-after-startup";
+
+	private CompletableFuture<Void> fontsLoaded;
+	private MainViewController controller;
+
+	@Override
+	public void init() {
+		// Fonts take a while to load, so we do that while the main view is loaded.
+		fontsLoaded = CompletableFuture.runAsync(() -> {
+			FxUtils.loadFonts(FONTS);
+			StartupTimer.mark("fonts_loaded");
+		}, VirtualThreads.executor());
+		StartupTimer.mark("toolkit_started");
+	}
+
 	@Override
 	public void start(Stage stage) throws IOException {
-		if (!Files.exists(BASE_DIR)) Files.createDirectory(BASE_DIR);
-		if (!Files.exists(VERSIONS_DIR)) Files.createDirectory(VERSIONS_DIR);
-		if (!Files.exists(PROFILES_DIR)) Files.createDirectory(PROFILES_DIR);
-		stage.setScene(FxUtils.loadScene("/main_view.fxml", STANDARD_STYLESHEETS));
+		createDirectories();
+		FXMLLoader loader = new FXMLLoader(Launcher.class.getResource("/main_view.fxml"));
+		Scene scene = new Scene(loader.load());
+		controller = loader.getController();
+		StartupTimer.mark("main_view_loaded");
+		// Don't wait for the fonts, if they're not loaded yet. The window can switch to them once they are.
+		FxUtils.addStylesheet(scene, "/styles.css");
+		fontsLoaded.thenRun(() -> Platform.runLater(() -> FxUtils.addStylesheet(scene, "/font/fonts.css")));
+		stage.setScene(scene);
 		stage.setTitle("Ace of Shades - Launcher");
 		stage.getIcons().add(FileUtils.loadImage("/icon.png"));
+		scene.addPostLayoutPulseListener(new Runnable() {
+			@Override
+			public void run() {
+				scene.removePostLayoutPulseListener(this);
+				StartupTimer.mark("first_frame");
+				onFirstFrame(controller);
+			}
+		});
 		stage.show();
+		StartupTimer.mark("window_shown");
+	}
+
+	/**
+	 * Starts the work that isn't needed to show the window.
+	 */
+	private void onFirstFrame(MainViewController controller) {
+		CompletableFuture.runAsync(() -> Metrics.startExporting(METRICS_FILE), VirtualThreads.executor());
+		if (getParameters().getUnnamed().contains(EXIT_AFTER_STARTUP_FLAG)) {
+			CompletableFuture.allOf(fontsLoaded, controller.getProfilesLoaded())
+					.whenComplete((v, throwable) -> Platform.exit());
+		}
+	}
+
+	@Override
+	public void stop() {
+		// Don't leave recent profile changes to the shutdown hook.
+		if (controller != null) controller.getProfileSet().flush();
+		if (getParameters().getUnnamed().contains(STARTUP_REPORT_FLAG)) {
+			System.out.print(StartupTimer.report());
+		}
+	}
+
+	/**
+	 * Creates the launcher's directories, if they don't exist yet.
+	 * @throws IOException If a directory couldn't be created.
+	 */
+	static void createDirectories() throws IOException {
+		if (!Files.exists(BASE_DIR)) Files.createDirectory(BASE_DIR);
+		if (!Files.exists(VERSIONS_DIR)) Files.createDirectory(VERSIONS_DIR);
+		if (!Files.exists(PROFILES_DIR)) Files.createDirectory(PROFILES_DIR);
 	}
 
 	private void addStylesheet(Scene scene, String resource) throws IOException {
@@ -39,6 +126,11 @@ public class Launcher extends Application {
 	}
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(BotFleet.COMMAND)) {
+			// The bot fleet runs without a window, so JavaFX is never started.
+			System.exit(BotFleet.run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		StartupTimer.mark("main");
 		launch(args);
 	}
 }
@@ -2,11 +2,14 @@ package nl.andrewl.aos2_launcher;
 
 import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.ListChangeListener;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.Window;
+import nl.andrewl.aos2_launcher.metrics.StartupTimer;
 import nl.andrewl.aos2_launcher.model.Profile;
 import nl.andrewl.aos2_launcher.model.ProfileSet;
 import nl.andrewl.aos2_launcher.model.ProgressReporter;
@@ -14,16 +17,20 @@ import nl.andrewl.aos2_launcher.model.Server;
 import nl.andrewl.aos2_launcher.view.*;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
 
-public class MainViewController implements ProgressReporter {
+public class MainViewController {
 	@FXML public Button playButton;
 	@FXML public Button editProfileButton;
 	@FXML public Button removeProfileButton;
 	@FXML public VBox profilesVBox;
 	private ElementList<Profile, ProfileView> profilesList;
 
+	@FXML public Tab serversTab;
 	@FXML public Button quickConnectButton;
-	@FXML public VBox serversVBox;
+	@FXML public CheckBox sortByPingCheckBox;
+	@FXML public ListView<Server> serversListView;
 	private ElementList<Server, ServerView> serversList;
 
 	@FXML public VBox progressVBox;
@@ -33,7 +40,34 @@ public class MainViewController implements ProgressReporter {
 
 	private final ProfileSet profileSet = new ProfileSet();
 
+	private final ProgressReporter progressReporter = new CoalescingProgressReporter(new ProgressReporter() {
+		@Override
+		public void enableProgress() {
+			progressVBox.setVisible(true);
+			progressBar.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+			progressLabel.setText(null);
+		}
+
+		@Override
+		public void disableProgress() {
+			progressVBox.setVisible(false);
+		}
+
+		@Override
+		public void setActionText(String text) {
+			progressLabel.setText(text);
+		}
+
+		@Override
+		public void setProgress(double progress) {
+			progressBar.setProgress(progress);
+		}
+	});
+
 	private ServersFetcher serversFetcher;
+	private final ServerLatencyProber latencyProber = new ServerLatencyProber();
+	private final Prefetcher prefetcher = new Prefetcher();
+	private CompletableFuture<Void> profilesLoaded;
 
 	@FXML
 	public void initialize() {
@@ -46,9 +80,11 @@ public class MainViewController implements ProgressReporter {
 			profilesList.addAll(profileSet.getProfiles());
 			profilesList.selectElement(selected);
 		});
-		profileSet.loadOrCreateStandardFile().thenRun(() -> Platform.runLater(() -> {
+		profilesLoaded = profileSet.loadOrCreateStandardFile().thenRun(() -> Platform.runLater(() -> {
+			StartupTimer.mark("profiles_loaded");
 			profilesList.selectElement(profileSet.getSelectedProfile());
 			profileSet.selectedProfileProperty().bind(profilesList.selectedElementProperty());
+			prefetcher.watch(profileSet.selectedProfileProperty());
 		})).exceptionally(throwable -> {
 			Alert alert = new Alert(Alert.AlertType.ERROR);
 			alert.initOwner(profilesVBox.getScene().getWindow());
@@ -57,7 +93,7 @@ public class MainViewController implements ProgressReporter {
 			return null;
 		});
 
-		serversList = new ElementList<>(serversVBox, ServerView::new, ServerView.class, ServerView::getServer);
+		serversList = new ElementList<>(serversListView, ServerView::new, ServerView::setServer);
 
 		BooleanBinding playBind = profileSet.selectedProfileProperty().isNull().or(serversList.selectedElementProperty().isNull());
 		playButton.disableProperty().bind(playBind);
@@ -69,7 +105,28 @@ public class MainViewController implements ProgressReporter {
 		progressVBox.setVisible(false);
 
 		serversFetcher = new ServersFetcher(registryUrlField.textProperty());
-		Platform.runLater(this::refreshServers);
+		// Servers are only needed once the user looks for one, so we don't fetch them during startup.
+		serversTab.selectedProperty().addListener(new ChangeListener<>() {
+			@Override
+			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean selected) {
+				if (!selected) return;
+				observable.removeListener(this);
+				refreshServers();
+			}
+		});
+	}
+
+	/**
+	 * Gets a future that completes once the profiles have been loaded, or
+	 * couldn't be loaded.
+	 * @return The future.
+	 */
+	public CompletableFuture<Void> getProfilesLoaded() {
+		return profilesLoaded;
+	}
+
+	public ProfileSet getProfileSet() {
+		return profileSet;
 	}
 
 	@FXML
@@ -88,11 +145,21 @@ public class MainViewController implements ProgressReporter {
 					return new ArrayList<>();
 				})
 				.thenAccept(newServers -> Platform.runLater(() -> {
-					serversList.clear();
-					serversList.addAll(newServers);
+					StartupTimer.mark("servers_loaded");
+					serversList.reconcile(newServers, Server::getAddressKey, Server::update);
+					latencyProber.probeAll(new ArrayList<>(serversList.getElements()))
+							.thenRun(() -> Platform.runLater(this::sortServers));
 				}));
 	}
 
+	@FXML
+	public void sortServers() {
+		if (sortByPingCheckBox.isSelected()) {
+			// Servers whose latency is unknown go at the end.
+			serversList.sort(Comparator.comparingLong(server -> server.getLatency() < 0 ? Long.MAX_VALUE : server.getLatency()));
+		}
+	}
+
 	@FXML
 	public void addProfile() {
 		EditProfileDialog dialog = new EditProfileDialog(profilesVBox.getScene().getWindow());
@@ -116,37 +183,13 @@ public class MainViewController implements ProgressReporter {
 		new GameRunner().run(
 				profileSet.getSelectedProfile(),
 				serversList.getSelectedElement(),
-				this,
+				progressReporter,
 				this.profilesVBox.getScene().getWindow()
 		);
 	}
 
-	@Override
-	public void enableProgress() {
-		Platform.runLater(() -> {
-			progressVBox.setVisible(true);
-			progressBar.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
-			progressLabel.setText(null);
-		});
-	}
-
-	@Override
-	public void disableProgress() {
-		Platform.runLater(() -> progressVBox.setVisible(false));
-	}
-
-	@Override
-	public void setActionText(String text) {
-		Platform.runLater(() -> progressLabel.setText(text));
-	}
-
-	@Override
-	public void setProgress(double progress) {
-		Platform.runLater(() -> progressBar.setProgress(progress));
-	}
-
 	@FXML
 	public void onQuickConnect() {
-		new QuickConnectDialog(profilesVBox.getScene().getWindow(), profileSet.getSelectedProfile(), this);
+		new QuickConnectDialog(profilesVBox.getScene().getWindow(), profileSet.getSelectedProfile(), progressReporter);
 	}
 }
@@ -0,0 +1,80 @@
+package nl.andrewl.aos2_launcher;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import nl.andrewl.aos2_launcher.model.Profile;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the JRE and the selected profile's client version in the
+ * background, before the user presses play, so that the game can usually
+ * start right away.
+ * <p>
+ *     Prefetching is kept out of the way of everything else: it only starts
+ *     once the selection has stayed the same for a few seconds, it fetches
+ *     one thing at a time, and it never shows progress. That's the only
+ *     throttling: the downloads themselves run on the shared network
+ *     service, because if the user presses play while a prefetch is still
+ *     downloading something, the game runner simply waits for that same
+ *     download, and shows its progress. Slowing it down would only make the
+ *     user wait longer.
+ * </p>
+ */
+class Prefetcher {
+	private static final long QUIET_PERIOD_MS = 3000;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "prefetcher");
+		t.setDaemon(true);
+		return t;
+	});
+	private final ChangeListener<String> clientVersionListener = (observable, oldValue, newValue) -> schedule(newValue);
+	private ScheduledFuture<?> scheduledPrefetch = null;
+	private CompletableFuture<Void> activePrefetch = CompletableFuture.completedFuture(null);
+
+	/**
+	 * Starts prefetching for the selected profile, and again whenever the
+	 * selected profile or its client version changes.
+	 * @param selectedProfile The selected profile.
+	 */
+	public void watch(ObservableValue<Profile> selectedProfile) {
+		selectedProfile.addListener((observable, oldValue, newValue) -> {
+			if (oldValue != null) oldValue.clientVersionProperty().removeListener(clientVersionListener);
+			select(newValue);
+		});
+		select(selectedProfile.getValue());
+	}
+
+	private void select(Profile profile) {
+		if (profile == null) return;
+		profile.clientVersionProperty().addListener(clientVersionListener);
+		schedule(profile.getClientVersion());
+	}
+
+	private synchronized void schedule(String clientVersion) {
+		if (scheduledPrefetch != null) scheduledPrefetch.cancel(false);
+		scheduledPrefetch = scheduler.schedule(() -> prefetch(clientVersion), QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void prefetch(String clientVersion) {
+		// Wait for any earlier prefetch to finish first, so we only download one thing at a time.
+		activePrefetch = activePrefetch
+				.thenCompose(v -> SystemVersionValidator.getJreExecutablePath(ProgressReporter.NONE))
+				.thenCompose(jrePath -> {
+					if (clientVersion == null || clientVersion.isBlank()) return CompletableFuture.completedFuture(null);
+					return VersionFetcher.INSTANCE.getVersionFile(clientVersion, ProgressReporter.NONE);
+				})
+				.handle((result, throwable) -> {
+					if (throwable != null) {
+						System.err.println("Couldn't prefetch files for client version " + clientVersion + ": " + throwable.getMessage());
+					}
+					return null;
+				});
+	}
+}
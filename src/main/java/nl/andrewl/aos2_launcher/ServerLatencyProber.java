@@ -0,0 +1,98 @@
+package nl.andrewl.aos2_launcher;
+
+import javafx.application.Platform;
+import nl.andrewl.aos2_launcher.model.Server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Measures the round-trip time to servers, by timing how long it takes to
+ * open a TCP connection to each server's host and port. Probes run
+ * concurrently, but with a bounded number of probes in flight at once. Each
+ * probe, including resolving the server's host, is limited to a fixed time,
+ * so a server that's slow to resolve can't hold up the others.
+ */
+class ServerLatencyProber {
+	private static final int MAX_CONCURRENT_PROBES = 8;
+	private static final int PROBE_TIMEOUT_MS = 2000;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENT_PROBES, r -> {
+		Thread t = new Thread(r, "server-latency-prober");
+		t.setDaemon(true);
+		return t;
+	});
+	/**
+	 * Resolves hosts for the probes. Lookups can't be interrupted, so one
+	 * that takes too long is left to finish here, while its probe gives up.
+	 */
+	private final ExecutorService resolver = Executors.newCachedThreadPool(r -> {
+		Thread t = new Thread(r, "server-latency-resolver");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Probes all the given servers, and updates each server's latency on the
+	 * JavaFX application thread as soon as its probe is done.
+	 * @param servers The servers to probe.
+	 * @return A future that completes when all servers have been probed.
+	 */
+	public CompletableFuture<Void> probeAll(List<Server> servers) {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[servers.size()];
+		for (int i = 0; i < servers.size(); i++) {
+			Server server = servers.get(i);
+			String host = server.getHost();
+			int port = server.getPort();
+			futures[i] = CompletableFuture.supplyAsync(() -> probe(host, port), executor)
+					.thenAccept(latency -> Platform.runLater(() -> server.setLatency(latency)));
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
+	/**
+	 * Measures the time it takes to connect to a server.
+	 * @param host The server's host.
+	 * @param port The server's port.
+	 * @return The latency in milliseconds, or -1 if the server couldn't be
+	 * resolved and reached within the timeout.
+	 */
+	private long probe(String host, int port) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+		try {
+			// Resolve the host first, so that DNS lookup time isn't counted.
+			InetAddress hostAddress = CompletableFuture.supplyAsync(() -> resolve(host), resolver)
+					.get(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			if (hostAddress == null) return -1;
+			int remainingMillis = (int) TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remainingMillis <= 0) return -1;
+			try (var socket = new Socket()) {
+				long start = System.nanoTime();
+				socket.connect(new InetSocketAddress(hostAddress, port), remainingMillis);
+				return (System.nanoTime() - start) / 1_000_000;
+			}
+		} catch (IOException | ExecutionException | TimeoutException e) {
+			return -1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
+	private static InetAddress resolve(String host) {
+		try {
+			return InetAddress.getByName(host);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
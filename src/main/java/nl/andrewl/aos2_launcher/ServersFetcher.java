@@ -1,33 +1,41 @@
 package nl.andrewl.aos2_launcher;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.scene.control.Alert;
 import javafx.stage.Window;
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Gauge;
+import nl.andrewl.aos2_launcher.metrics.Histogram;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
 import nl.andrewl.aos2_launcher.model.Server;
+import nl.andrewl.aos2_launcher.util.JsonUtils;
+import nl.andrewl.aos2_launcher.util.NetworkService;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 class ServersFetcher {
-	private final HttpClient httpClient;
-	private final Gson gson;
+	private static final Histogram FETCH_TIME = Metrics.histogram("registry_fetch_seconds", "Time to fetch and read the list of servers from the registry.");
+	private static final Counter FETCH_FAILURES = Metrics.counter("registry_failures_total", "Number of failed requests for the list of servers.");
+	private static final Gauge SERVER_COUNT = Metrics.gauge("registry_servers", "Number of servers in the last list fetched from the registry.");
+
+	private final NetworkService network = NetworkService.INSTANCE;
 	private final StringProperty registryUrl;
 
 	public ServersFetcher(StringProperty registryUrlProperty) {
-		httpClient = HttpClient.newBuilder().build();
-		gson = new Gson();
 		this.registryUrl = new SimpleStringProperty("http://localhost:8080");
 		registryUrl.bind(registryUrlProperty);
 	}
@@ -42,33 +50,67 @@ class ServersFetcher {
 			});
 			return CompletableFuture.completedFuture(new ArrayList<>());
 		}
-		HttpRequest req = HttpRequest.newBuilder(URI.create(registryUrl.get() + "/servers"))
+		HttpRequest req = network.request(URI.create(registryUrl.get() + "/servers"))
 				.GET()
 				.timeout(Duration.ofSeconds(3))
 				.header("Accept", "application/json")
 				.build();
-		return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+		long start = System.nanoTime();
+		return network.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
 				.thenApplyAsync(resp -> {
-					if (resp.statusCode() == 200) {
-						JsonArray serversArray = gson.fromJson(resp.body(), JsonArray.class);
-						List<Server> servers = new ArrayList<>(serversArray.size());
-						for (JsonElement serverJson : serversArray) {
-							if (serverJson instanceof JsonObject obj) {
-								servers.add(new Server(
-										obj.get("host").getAsString(),
-										obj.get("port").getAsInt(),
-										obj.get("name").getAsString(),
-										obj.get("description").getAsString(),
-										obj.get("maxPlayers").getAsInt(),
-										obj.get("currentPlayers").getAsInt(),
-										obj.get("lastUpdatedAt").getAsLong()
-								));
-							}
+					try (var reader = new JsonReader(new InputStreamReader(resp.body(), StandardCharsets.UTF_8))) {
+						if (resp.statusCode() != 200) {
+							throw new RuntimeException("Invalid response: " + resp.statusCode());
 						}
-						return servers;
+						return readServers(reader);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, VirtualThreads.executor())
+				.whenComplete((servers, throwable) -> {
+					FETCH_TIME.recordSince(start);
+					if (throwable != null) {
+						FETCH_FAILURES.increment();
 					} else {
-						throw new RuntimeException("Invalid response: " + resp.statusCode());
+						SERVER_COUNT.set(servers.size());
 					}
 				});
 	}
+
+	/**
+	 * Reads the list of servers from a registry response, one server at a
+	 * time, skipping any fields that we don't use.
+	 * @param reader The reader to read the response from.
+	 * @return The list of servers.
+	 * @throws IOException If the response couldn't be read.
+	 */
+	public static List<Server> readServers(JsonReader reader) throws IOException {
+		List<Server> servers = new ArrayList<>();
+		JsonUtils.readObjectArray(reader, r -> {
+			String host = null;
+			int port = 0;
+			String name = null;
+			String description = null;
+			int maxPlayers = 0;
+			int currentPlayers = 0;
+			long lastUpdatedAt = 0;
+			r.beginObject();
+			while (r.hasNext()) {
+				switch (r.nextName()) {
+					case "host" -> host = JsonUtils.nextStringOrNull(r);
+					case "port" -> port = r.nextInt();
+					case "name" -> name = JsonUtils.nextStringOrNull(r);
+					case "description" -> description = JsonUtils.nextStringOrNull(r);
+					case "maxPlayers" -> maxPlayers = r.nextInt();
+					case "currentPlayers" -> currentPlayers = r.nextInt();
+					case "lastUpdatedAt" -> lastUpdatedAt = r.nextLong();
+					default -> r.skipValue();
+				}
+			}
+			r.endObject();
+			if (host == null) throw new IOException("Server entry is missing a host.");
+			servers.add(new Server(host, port, name, description, maxPlayers, currentPlayers, lastUpdatedAt));
+		});
+		return servers;
+	}
 }
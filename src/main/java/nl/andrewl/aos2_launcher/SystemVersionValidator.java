@@ -1,18 +1,23 @@
 package nl.andrewl.aos2_launcher;
 
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Histogram;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+import nl.andrewl.aos2_launcher.model.JreManifest;
 import nl.andrewl.aos2_launcher.model.ProgressReporter;
+import nl.andrewl.aos2_launcher.util.ArchiveExtractor;
+import nl.andrewl.aos2_launcher.util.AttachableProgressReporter;
 import nl.andrewl.aos2_launcher.util.FileUtils;
+import nl.andrewl.aos2_launcher.util.NetworkService;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Duration;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiPredicate;
 
@@ -32,6 +37,13 @@ public class SystemVersionValidator {
 	private static final boolean ARCH_ARM32 = arch.equals("arm32");
 
 	private static final String JRE_DOWNLOAD_URL = "https://github.com/adoptium/temurin17-binaries/releases/download/jdk-17.0.4+8/";
+	private static final Path JRE_MANIFEST_FILE = Launcher.JRE_PATH.resolve("launcher-manifest.json");
+
+	private static final Histogram JRE_INSTALL_TIME = Metrics.histogram("jre_install_seconds", "Time to download, extract and install a JRE.");
+	private static final Counter JRE_INSTALL_FAILURES = Metrics.counter("jre_install_failures_total", "Number of failed JRE installations.");
+
+	private static volatile JreManifest installedJre = null;
+	private static ActiveDownload activeJreDownload = null;
 
 	public static String getPreferredVersionSuffix() {
 		if (OS_LINUX) {
@@ -51,55 +63,135 @@ public class SystemVersionValidator {
 		return "windows-amd64";
 	}
 
-	public static CompletableFuture<Path> getJreExecutablePath(ProgressReporter progressReporter) {
-		Optional<Path> optionalExecutablePath = findJreExecutable();
-		return optionalExecutablePath.map(CompletableFuture::completedFuture)
-				.orElseGet(() -> downloadAppropriateJre(progressReporter));
+	/**
+	 * Gets the java executable of the installed JRE, downloading it first if
+	 * needed. If the JRE is already being downloaded, for example by the
+	 * prefetcher, this waits for that download instead of starting another,
+	 * and its progress is shown on the given reporter from then on.
+	 * @param progressReporter A progress reporter to visualize the progress.
+	 * @return A future that completes with the path to the java executable.
+	 */
+	public static synchronized CompletableFuture<Path> getJreExecutablePath(ProgressReporter progressReporter) {
+		Optional<Path> optionalExecutablePath = getInstalledJreExecutable();
+		if (optionalExecutablePath.isPresent()) return CompletableFuture.completedFuture(optionalExecutablePath.get());
+		if (activeJreDownload == null || activeJreDownload.future().isDone()) {
+			// The installed JRE isn't usable here, so a manifest we still keep is one for an outdated release.
+			JreManifest outdatedJre = installedJre;
+			if (outdatedJre != null) {
+				System.out.println("Installed JRE " + outdatedJre.version() + " is outdated. A new one will be downloaded.");
+			}
+			AttachableProgressReporter reporter = new AttachableProgressReporter(ProgressReporter.NONE);
+			activeJreDownload = new ActiveDownload(downloadAppropriateJre(reporter), reporter);
+		}
+		activeJreDownload.reporter().attach(progressReporter);
+		return activeJreDownload.future();
 	}
 
 	public static CompletableFuture<Path> downloadAppropriateJre(ProgressReporter progressReporter) {
 		progressReporter.enableProgress();
 		progressReporter.setActionText("Downloading JRE...");
-		HttpClient httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
-		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder().GET().timeout(Duration.ofMinutes(5));
 		String jreArchiveName = getPreferredJreName();
-		String url = JRE_DOWNLOAD_URL + jreArchiveName;
-		HttpRequest req = requestBuilder.uri(URI.create(url)).build();
-		return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
-				.thenApplyAsync(resp -> {
-					if (resp.statusCode() == 200) {
-						// Download sequentially, and update the progress.
-						try {
-							if (Files.exists(Launcher.JRE_PATH)) {
-								FileUtils.deleteRecursive(Launcher.JRE_PATH);
-							}
-							Files.createDirectory(Launcher.JRE_PATH);
-							Path jreArchiveFile = Launcher.JRE_PATH.resolve(jreArchiveName);
-							FileUtils.downloadWithProgress(jreArchiveFile, resp, progressReporter);
-							progressReporter.setProgress(-1); // Indefinite progress.
-							progressReporter.setActionText("Unpacking JRE...");
-							ProcessBuilder pb = new ProcessBuilder().inheritIO();
-							if (OS_LINUX || OS_MAC) {
-								pb.command("tar", "-xzf", jreArchiveFile.toAbsolutePath().toString(), "-C", Launcher.JRE_PATH.toAbsolutePath().toString());
-							} else if (OS_WINDOWS) {
-								pb.command("powershell", "-command", "\"Expand-Archive -Force '" + jreArchiveFile.toAbsolutePath() + "' '" + Launcher.JRE_PATH.toAbsolutePath() + "'\"");
-							}
-							Process process = pb.start();
-							int result = process.waitFor();
-							if (result != 0) throw new IOException("Archive extraction process exited with non-zero code: " + result);
-							Files.delete(jreArchiveFile);
-							progressReporter.setActionText("Looking for java executable...");
-							Optional<Path> optionalExecutablePath = findJreExecutable();
-							if (optionalExecutablePath.isEmpty()) throw new IOException("Couldn't find java executable.");
-							progressReporter.disableProgress();
-							return optionalExecutablePath.get();
-						} catch (IOException | InterruptedException e) {
-							throw new RuntimeException(e);
-						}
+		String jreUrl = JRE_DOWNLOAD_URL + jreArchiveName;
+		URI uri = URI.create(jreUrl);
+		long start = System.nanoTime();
+		return CompletableFuture.supplyAsync(() -> {
+			Path archiveFile = Launcher.BASE_DIR.resolve(jreArchiveName);
+			// Unpack into a staging directory first, so an interrupted install never replaces a working JRE.
+			Path stagingDir = Launcher.BASE_DIR.resolve("jre-staging");
+			try {
+				if (Files.exists(stagingDir)) {
+					FileUtils.deleteRecursive(stagingDir);
+				}
+				Files.createDirectory(stagingDir);
+				FileUtils.downloadAndConsume(NetworkService.INSTANCE, uri, archiveFile, progressReporter, in -> {
+					if (jreArchiveName.endsWith(".zip")) {
+						ArchiveExtractor.extractZip(in, stagingDir);
 					} else {
-						throw new RuntimeException("JRE download failed: " + resp.statusCode());
+						ArchiveExtractor.extractTarGz(in, stagingDir);
 					}
 				});
+				progressReporter.setProgress(-1); // Indefinite progress.
+				progressReporter.setActionText("Installing JRE...");
+				if (Files.exists(Launcher.JRE_PATH)) {
+					FileUtils.deleteRecursive(Launcher.JRE_PATH);
+				}
+				Files.move(stagingDir, Launcher.JRE_PATH);
+				progressReporter.setActionText("Looking for java executable...");
+				Optional<Path> optionalExecutablePath = findJreExecutable();
+				if (optionalExecutablePath.isEmpty()) throw new IOException("Couldn't find java executable.");
+				writeJreManifest(optionalExecutablePath.get(), jreUrl);
+				Files.deleteIfExists(archiveFile);
+				progressReporter.disableProgress();
+				return optionalExecutablePath.get();
+			} catch (IOException e) {
+				throw new RuntimeException("JRE download failed: " + e.getMessage(), e);
+			}
+		}, VirtualThreads.executor()).whenComplete((executable, throwable) -> {
+			JRE_INSTALL_TIME.recordSince(start);
+			if (throwable != null) JRE_INSTALL_FAILURES.increment();
+		});
+	}
+
+	/**
+	 * Gets the java executable of the installed JRE, using the JRE manifest
+	 * that was written when it was installed, so that this only needs to
+	 * check a single path.
+	 * @return The path to the java executable, or an empty optional if no
+	 * JRE is installed, or if it's not from the release we want.
+	 */
+	private static Optional<Path> getInstalledJreExecutable() {
+		JreManifest manifest = installedJre;
+		if (manifest == null) {
+			manifest = JreManifest.load(JRE_MANIFEST_FILE);
+			if (manifest == null) manifest = adoptExistingJre();
+			if (manifest == null) return Optional.empty();
+			installedJre = manifest;
+		}
+		if (!(JRE_DOWNLOAD_URL + getPreferredJreName()).equals(manifest.release())) return Optional.empty();
+		Path executable = Launcher.JRE_PATH.resolve(manifest.executable());
+		if (!Files.isExecutable(executable)) {
+			installedJre = null;
+			return Optional.empty();
+		}
+		return Optional.of(executable);
+	}
+
+	/**
+	 * Writes a manifest for a JRE that was installed before we recorded JRE
+	 * manifests. Those could only have come from the current release URL.
+	 * @return The manifest, or null if there's no JRE installed.
+	 */
+	private static JreManifest adoptExistingJre() {
+		Optional<Path> optionalExecutablePath = findJreExecutable();
+		if (optionalExecutablePath.isEmpty()) return null;
+		try {
+			return writeJreManifest(optionalExecutablePath.get(), JRE_DOWNLOAD_URL + getPreferredJreName());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static JreManifest writeJreManifest(Path executable, String release) throws IOException {
+		String version = null;
+		// JRE distributions include a "release" file with properties like JAVA_RUNTIME_VERSION.
+		Path releaseFile = executable.getParent().getParent().resolve("release");
+		if (Files.exists(releaseFile)) {
+			Properties properties = new Properties();
+			try (var reader = Files.newBufferedReader(releaseFile)) {
+				properties.load(reader);
+			}
+			String runtimeVersion = properties.getProperty("JAVA_RUNTIME_VERSION", properties.getProperty("JAVA_VERSION"));
+			if (runtimeVersion != null) version = runtimeVersion.replace("\"", "");
+		}
+		JreManifest manifest = new JreManifest(
+				Launcher.JRE_PATH.relativize(executable).toString(),
+				version,
+				release
+		);
+		manifest.save(JRE_MANIFEST_FILE);
+		installedJre = manifest;
+		return manifest;
 	}
 
 	private static Optional<Path> findJreExecutable() {
@@ -1,27 +1,32 @@
 package nl.andrewl.aos2_launcher;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Histogram;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
 import nl.andrewl.aos2_launcher.model.ClientVersionRelease;
 import nl.andrewl.aos2_launcher.model.ProgressReporter;
+import nl.andrewl.aos2_launcher.util.AttachableProgressReporter;
 import nl.andrewl.aos2_launcher.util.FileUtils;
+import nl.andrewl.aos2_launcher.util.JarChunkStore;
+import nl.andrewl.aos2_launcher.util.JarDeltaUpdater;
+import nl.andrewl.aos2_launcher.util.JsonUtils;
+import nl.andrewl.aos2_launcher.util.NetworkService;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,12 +34,31 @@ public class VersionFetcher {
 	private static final String BASE_GITHUB_URL = "https://api.github.com/repos/Ace-of-Shades-2/Game";
 	private static final Pattern OFFICIAL_VERSION_REGEX = Pattern.compile("aos2-client-v\\d+\\.\\d+\\.\\d+-" + SystemVersionValidator.getPreferredVersionSuffix() + "\\.jar");
 	private static final Pattern VERSION_REGEX = Pattern.compile("v\\d+\\.\\d+\\.\\d+");
+	/**
+	 * The number of official versions that are kept as jar files in the
+	 * versions directory. Others are only kept in the jar store, and are
+	 * rebuilt from there when they're needed again.
+	 */
+	private static final int MAX_UNPACKED_VERSIONS = 2;
+	/**
+	 * The number of official versions that are kept in the jar store. Older
+	 * ones are removed, and have to be downloaded again if they're needed.
+	 */
+	private static final int MAX_STORED_VERSIONS = 10;
+
+	private static final Histogram RELEASES_FETCH_TIME = Metrics.histogram("github_releases_fetch_seconds", "Time to fetch and read the list of releases from GitHub.");
+	private static final Histogram ASSETS_FETCH_TIME = Metrics.histogram("github_assets_fetch_seconds", "Time to fetch and read a release's assets from GitHub.");
+	private static final Counter GITHUB_FAILURES = Metrics.counter("github_failures_total", "Number of failed requests for release metadata from GitHub.");
 
 	public static final VersionFetcher INSTANCE = new VersionFetcher();
 
 	private final List<ClientVersionRelease> availableReleases;
 
-	private final HttpClient httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+	private final NetworkService network = NetworkService.INSTANCE;
+	private final VersionIndex versionIndex = new VersionIndex(Launcher.VERSIONS_DIR, OFFICIAL_VERSION_REGEX, VERSION_REGEX);
+	private final JarChunkStore jarStore = new JarChunkStore(Launcher.JAR_STORE_DIR);
+	private final HttpMetadataCache metadataCache = new HttpMetadataCache(network, Launcher.CACHE_DIR.resolve("http"));
+	private final Map<String, ActiveDownload> activeDownloads = new ConcurrentHashMap<>();
 	private boolean loaded = false;
 	private CompletableFuture<List<ClientVersionRelease>> activeReleaseFetchFuture;
 
@@ -53,19 +77,14 @@ public class VersionFetcher {
 		return getAvailableReleases().thenApplyAsync(releases -> {
 			List<String> versions = new ArrayList<>(releases.size());
 			for (var r : releases) versions.add(r.tag());
-			try (var s = Files.list(Launcher.VERSIONS_DIR)) {
-				s.filter(this::isVersionFile)
-					.map(path -> {
-						String filename = path.getFileName().toString();
-						if (isOfficialVersionFile(path)) return extractVersion(path);
-						return filename.substring(0, filename.length() - 4);
-					})
-					.sorted()
-					.forEachOrdered(name -> {
-						if (!versions.contains(name)) versions.add(name);
-					});
-			} catch (IOException e) {
-				e.printStackTrace();
+			for (var name : versionIndex.getVersionNames()) {
+				if (!versions.contains(name)) versions.add(name);
+			}
+			for (var name : jarStore.getJarNames()) {
+				Matcher matcher = VERSION_REGEX.matcher(name);
+				if (OFFICIAL_VERSION_REGEX.matcher(name).matches() && matcher.find() && !versions.contains(matcher.group())) {
+					versions.add(matcher.group());
+				}
 			}
 			return versions;
 		});
@@ -86,32 +105,23 @@ public class VersionFetcher {
 
 	private CompletableFuture<List<ClientVersionRelease>> fetchReleasesFromGitHub() {
 		if (activeReleaseFetchFuture != null) return activeReleaseFetchFuture;
-		HttpRequest req = HttpRequest.newBuilder(URI.create(BASE_GITHUB_URL + "/releases"))
-				.timeout(Duration.ofSeconds(3))
-				.GET()
-				.build();
-		activeReleaseFetchFuture = httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
-				.thenApplyAsync(resp -> {
-					if (resp.statusCode() == 200) {
-						JsonArray releasesArray = new Gson().fromJson(new InputStreamReader(resp.body()), JsonArray.class);
+		long start = System.nanoTime();
+		activeReleaseFetchFuture = metadataCache.get(URI.create(BASE_GITHUB_URL + "/releases"), Duration.ofSeconds(3))
+				.thenApplyAsync(bodyFile -> {
+					try (var reader = new JsonReader(Files.newBufferedReader(bodyFile))) {
+						List<ClientVersionRelease> releases = readReleases(reader);
 						availableReleases.clear();
-						for (var element : releasesArray) {
-							if (element.isJsonObject()) {
-								JsonObject obj = element.getAsJsonObject();
-								String tag = obj.get("tag_name").getAsString();
-								String apiUrl = obj.get("url").getAsString();
-								String assetsUrl = obj.get("assets_url").getAsString();
-								OffsetDateTime publishedAt = OffsetDateTime.parse(obj.get("published_at").getAsString(), DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-								LocalDateTime localPublishedAt = publishedAt.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
-								availableReleases.add(new ClientVersionRelease(tag, apiUrl, assetsUrl, localPublishedAt));
-							}
-						}
+						availableReleases.addAll(releases);
 						availableReleases.sort(Comparator.comparing(ClientVersionRelease::publishedAt).reversed());
 						loaded = true;
 						return availableReleases;
-					} else {
-						throw new RuntimeException("Error while requesting releases.");
+					} catch (IOException | RuntimeException e) {
+						throw new RuntimeException("Error while reading releases.", e);
 					}
+				}, VirtualThreads.executor())
+				.whenComplete((releases, throwable) -> {
+					RELEASES_FETCH_TIME.recordSince(start);
+					if (throwable != null) GITHUB_FAILURES.increment();
 				});
 		return activeReleaseFetchFuture;
 	}
@@ -123,93 +133,269 @@ public class VersionFetcher {
 	 *                   or a plain file name (without .jar suffix). If it's a
 	 *                   version tag, we will try to find (or download) an
 	 *                   official version with that tag. Otherwise, we just look
-	 *                   for a jar file with a matching name.
+	 *                   for a jar file with a matching name. Official
+	 *                   versions that are in the jar store are rebuilt from
+	 *                   there instead of being downloaded again. If that
+	 *                   version is already being downloaded, this waits for
+	 *                   the existing download.
 	 * @param progressReporter A progress reporter to visualize the progress.
 	 * @return A future that completes when the file is found and available.
 	 */
 	public CompletableFuture<Path> getVersionFile(String versionTag, ProgressReporter progressReporter) {
 		// Check if we're trying to get a normal version.
 		if (VERSION_REGEX.matcher(versionTag).matches()) {
-			try (var s = Files.list(Launcher.VERSIONS_DIR)) {
-				Optional<Path> optionalFile = s.filter(f -> isOfficialVersionFile(f) && versionTag.equals(extractVersion(f)))
-						.findFirst();
-				if (optionalFile.isPresent()) return CompletableFuture.completedFuture(optionalFile.get());
-			} catch (IOException e) {
-				return CompletableFuture.failedFuture(e);
+			Optional<Path> optionalFile = versionIndex.getOfficialVersionFile(versionTag);
+			if (optionalFile.isPresent()) {
+				markUsed(optionalFile.get());
+				return CompletableFuture.completedFuture(optionalFile.get());
 			}
-			progressReporter.enableProgress();
-			progressReporter.setActionText("Downloading client " + versionTag + "...");
-			var future = getRelease(versionTag)
-					.thenComposeAsync(release -> downloadVersion(release, progressReporter));
-			future.thenRun(progressReporter::disableProgress);
-			return future;
+			// If this version is already being downloaded, wait for that instead of downloading it twice.
+			ActiveDownload download = activeDownloads.computeIfAbsent(versionTag, this::startInstall);
+			download.future().whenComplete((file, throwable) -> activeDownloads.remove(versionTag, download));
+			download.reporter().attach(progressReporter);
+			return download.future();
 		} else {
 			// Otherwise, the user just wants to select an exact jar file.
-			Optional<Path> optionalFile = FileUtils.getFirstExisting(
-					Launcher.VERSIONS_DIR.resolve(versionTag),
-					Launcher.VERSIONS_DIR.resolve(versionTag + ".jar")
-			);
+			Optional<Path> optionalFile = versionIndex.getCustomVersionFile(versionTag);
 			return optionalFile.map(CompletableFuture::completedFuture)
 					.orElseGet(() -> CompletableFuture.failedFuture(new IOException("Version " + versionTag + " not found.")));
 		}
 
 	}
 
+	private ActiveDownload startInstall(String versionTag) {
+		AttachableProgressReporter reporter = new AttachableProgressReporter(ProgressReporter.NONE);
+		reporter.enableProgress();
+		Optional<String> storedJar = jarStore.getJarNames().stream()
+				.filter(name -> OFFICIAL_VERSION_REGEX.matcher(name).matches())
+				.filter(name -> VERSION_REGEX.matcher(name).results().anyMatch(r -> r.group().equals(versionTag)))
+				.findFirst();
+		CompletableFuture<Path> future;
+		if (storedJar.isPresent()) {
+			reporter.setActionText("Unpacking client " + versionTag + "...");
+			future = CompletableFuture.supplyAsync(() -> {
+				Path file = Launcher.VERSIONS_DIR.resolve(storedJar.get());
+				try {
+					jarStore.extract(storedJar.get(), file, reporter);
+				} catch (IOException e) {
+					throw new RuntimeException("Error while unpacking client " + versionTag + ": " + e.getMessage(), e);
+				}
+				return file;
+			}, VirtualThreads.executor());
+		} else {
+			reporter.setActionText("Downloading client " + versionTag + "...");
+			future = getRelease(versionTag)
+					.thenComposeAsync(release -> downloadVersion(release, reporter), VirtualThreads.executor());
+		}
+		future = future.thenApplyAsync(this::onInstalled, VirtualThreads.executor());
+		future.thenRun(reporter::disableProgress);
+		return new ActiveDownload(future, reporter);
+	}
+
+	/**
+	 * Called once an official version's jar file is in the versions directory,
+	 * either because it was downloaded, or rebuilt from the jar store. Makes
+	 * sure that it's in the store, and removes the jar files of versions that
+	 * haven't been used in a while.
+	 */
+	private Path onInstalled(Path file) {
+		versionIndex.add(file);
+		markUsed(file);
+		try {
+			if (!jarStore.contains(file.getFileName().toString())) jarStore.add(file);
+		} catch (IOException e) {
+			System.err.println("Couldn't add " + file.getFileName() + " to the jar store: " + e.getMessage());
+			return file;
+		}
+		removeUnusedVersionFiles();
+		removeUnusedStoredVersions();
+		return file;
+	}
+
+	/**
+	 * Removes the jar files of all but the most recently used official
+	 * versions from the versions directory, after making sure that they can
+	 * be rebuilt from the jar store. Custom versions, and versions that a
+	 * running game is using, are left alone.
+	 */
+	private void removeUnusedVersionFiles() {
+		List<Path> files = new ArrayList<>(versionIndex.getOfficialVersionFiles());
+		files.sort(Comparator.comparing(this::getLastUsedTime).reversed());
+		for (Path file : files.subList(Math.min(MAX_UNPACKED_VERSIONS, files.size()), files.size())) {
+			if (GameSession.isUsing(file)) continue;
+			try {
+				String name = file.getFileName().toString();
+				if (!jarStore.contains(name)) jarStore.add(file);
+				// Its class data sharing archives are kept: the jar is rebuilt with the same modification time, so they stay valid.
+				Files.delete(file);
+			} catch (IOException e) {
+				// The file may be in use by a running game, on some systems. We'll try again next time.
+				System.err.println("Couldn't move " + file.getFileName() + " to the jar store: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Removes all but the most recently used versions from the jar store,
+	 * along with their class data sharing archives, and then deletes the
+	 * stored data that no remaining version uses. Versions that are unpacked
+	 * in the versions directory are kept, since they're only allowed to be
+	 * removed from there once they're in the store.
+	 */
+	private void removeUnusedStoredVersions() {
+		List<String> names = new ArrayList<>(jarStore.getJarNames());
+		names.sort(Comparator.comparing(jarStore::getLastUsed).reversed());
+		boolean removedAny = false;
+		for (String name : names.subList(Math.min(MAX_STORED_VERSIONS, names.size()), names.size())) {
+			Path file = Launcher.VERSIONS_DIR.resolve(name);
+			if (Files.exists(file)) continue;
+			try {
+				jarStore.remove(name);
+				ClassDataArchives.deleteArchives(file);
+				removedAny = true;
+			} catch (IOException e) {
+				System.err.println("Couldn't remove " + name + " from the jar store: " + e.getMessage());
+			}
+		}
+		if (!removedAny) return;
+		try {
+			jarStore.removeUnusedChunks();
+		} catch (IOException e) {
+			System.err.println("Couldn't clean up the jar store: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Marks a version file as recently used, so that it isn't removed by
+	 * {@link #removeUnusedVersionFiles()}. This is recorded by the jar store,
+	 * instead of in the file's own timestamps: access times aren't reliably
+	 * kept by every file system, and are updated by anything that reads the
+	 * file, and changing the modification time would invalidate the file's
+	 * class data sharing archive.
+	 */
+	private void markUsed(Path file) {
+		try {
+			jarStore.markUsed(file.getFileName().toString());
+		} catch (IOException e) {
+			System.err.println("Couldn't mark " + file.getFileName() + " as used: " + e.getMessage());
+		}
+	}
+
+	private Instant getLastUsedTime(Path file) {
+		return jarStore.getLastUsed(file.getFileName().toString());
+	}
+
 	private CompletableFuture<Path> downloadVersion(ClientVersionRelease release, ProgressReporter progressReporter) {
-		HttpRequest req = HttpRequest.newBuilder(URI.create(release.assetsUrl()))
-				.GET().timeout(Duration.ofSeconds(3)).build();
-		CompletableFuture<JsonObject> downloadUrlFuture = httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofInputStream())
-			.thenApplyAsync(resp -> {
-				if (resp.statusCode() == 200) {
-					JsonArray assetsArray = new Gson().fromJson(new InputStreamReader(resp.body()), JsonArray.class);
-					for (var asset : assetsArray) {
-						JsonObject assetObj = asset.getAsJsonObject();
-						String name = assetObj.get("name").getAsString();
-						if (OFFICIAL_VERSION_REGEX.matcher(name).matches()) {
-							return assetObj;
-						}
-					}
-					throw new RuntimeException("Couldn't find a matching release asset for this system.");
-				} else {
-					throw new RuntimeException("Error while requesting release assets from GitHub: " + resp.statusCode());
+		long start = System.nanoTime();
+		CompletableFuture<ReleaseAsset> downloadUrlFuture = metadataCache.get(URI.create(release.assetsUrl()), Duration.ofSeconds(3))
+			.thenApplyAsync(bodyFile -> {
+				try (var reader = new JsonReader(Files.newBufferedReader(bodyFile))) {
+					return findMatchingAsset(reader)
+							.orElseThrow(() -> new RuntimeException("Couldn't find a matching release asset for this system."));
+				} catch (IOException e) {
+					throw new RuntimeException("Error while reading release assets from GitHub.", e);
 				}
+			}, VirtualThreads.executor())
+			.whenComplete((asset, throwable) -> {
+				ASSETS_FETCH_TIME.recordSince(start);
+				if (throwable != null) GITHUB_FAILURES.increment();
 			});
-		return downloadUrlFuture.thenComposeAsync(asset -> {
-			String url = asset.get("browser_download_url").getAsString();
-			String fileName = asset.get("name").getAsString();
-			HttpRequest downloadRequest = HttpRequest.newBuilder(URI.create(url))
-					.GET().timeout(Duration.ofMinutes(5)).build();
-			Path file = Launcher.VERSIONS_DIR.resolve(fileName);
-			return httpClient.sendAsync(downloadRequest, HttpResponse.BodyHandlers.ofInputStream())
-				.thenApplyAsync(resp -> {
-					if (resp.statusCode() == 200) {
-						// Download sequentially, and update the progress.
-						try {
-							FileUtils.downloadWithProgress(file, resp, progressReporter);
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						}
-						return file;
-					} else {
-						throw new RuntimeException("Error while downloading release asset from GitHub: " + resp.statusCode());
-					}
-				});
-		});
+		return downloadUrlFuture.thenApplyAsync(asset -> {
+			Path file = Launcher.VERSIONS_DIR.resolve(asset.name());
+			URI uri = URI.create(asset.downloadUrl());
+			try {
+				if (!tryDeltaUpdate(uri, file, progressReporter)) {
+					FileUtils.downloadWithProgress(network, uri, file, progressReporter);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Error while downloading release asset from GitHub: " + e.getMessage(), e);
+			}
+			return file;
+		}, VirtualThreads.executor());
 	}
 
-	private boolean isVersionFile(Path p) {
-		return Files.isRegularFile(p) && p.getFileName().toString().endsWith(".jar");
+	/**
+	 * Tries to get a new client version by downloading only what changed
+	 * since the newest version that's already installed.
+	 * @param uri The URI of the new version's jar.
+	 * @param file The file to write the new version to.
+	 * @param progressReporter A progress reporter to visualize the progress.
+	 * @return True if the new version was written, or false if it should be
+	 * downloaded in full.
+	 */
+	private boolean tryDeltaUpdate(URI uri, Path file, ProgressReporter progressReporter) {
+		Optional<Path> baseFile = versionIndex.getNewestOfficialVersionFile();
+		if (baseFile.isEmpty()) return false;
+		try {
+			return JarDeltaUpdater.tryUpdate(network, uri, baseFile.get(), file, progressReporter);
+		} catch (IOException e) {
+			System.err.println("Couldn't update from " + baseFile.get().getFileName() + ", downloading the whole client instead: " + e.getMessage());
+			return false;
+		}
 	}
 
-	private boolean isOfficialVersionFile(Path p) {
-		return isVersionFile(p) && OFFICIAL_VERSION_REGEX.matcher(p.getFileName().toString()).matches();
+	/**
+	 * Reads a list of releases from a GitHub API "/releases" response. Only
+	 * the fields we need are read; everything else, like each release's large
+	 * body and author objects, is skipped without being parsed into a tree.
+	 * @param reader The reader to read the response from.
+	 * @return The list of releases, in the order they appear.
+	 * @throws IOException If the response couldn't be read.
+	 */
+	public static List<ClientVersionRelease> readReleases(JsonReader reader) throws IOException {
+		List<ClientVersionRelease> releases = new ArrayList<>();
+		JsonUtils.readObjectArray(reader, r -> {
+			String tag = null;
+			String apiUrl = null;
+			String assetsUrl = null;
+			String publishedAt = null;
+			r.beginObject();
+			while (r.hasNext()) {
+				switch (r.nextName()) {
+					case "tag_name" -> tag = JsonUtils.nextStringOrNull(r);
+					case "url" -> apiUrl = JsonUtils.nextStringOrNull(r);
+					case "assets_url" -> assetsUrl = JsonUtils.nextStringOrNull(r);
+					case "published_at" -> publishedAt = JsonUtils.nextStringOrNull(r);
+					default -> r.skipValue();
+				}
+			}
+			r.endObject();
+			// Draft releases don't have a publication date yet.
+			if (tag == null || publishedAt == null) return;
+			OffsetDateTime published = OffsetDateTime.parse(publishedAt, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+			LocalDateTime localPublishedAt = published.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+			releases.add(new ClientVersionRelease(tag, apiUrl, assetsUrl, localPublishedAt));
+		});
+		return releases;
 	}
 
-	private String extractVersion(Path file) {
-		Matcher matcher = VERSION_REGEX.matcher(file.getFileName().toString());
-		if (matcher.find()) {
-			return matcher.group();
+	/**
+	 * Finds the client jar asset for this system in a GitHub API release
+	 * assets response, stopping as soon as it's found.
+	 * @param reader The reader to read the response from.
+	 * @return The matching asset, if there is one.
+	 * @throws IOException If the response couldn't be read.
+	 */
+	private static Optional<ReleaseAsset> findMatchingAsset(JsonReader reader) throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String name = null;
+			String downloadUrl = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "name" -> name = JsonUtils.nextStringOrNull(reader);
+					case "browser_download_url" -> downloadUrl = JsonUtils.nextStringOrNull(reader);
+					default -> reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (name != null && downloadUrl != null && OFFICIAL_VERSION_REGEX.matcher(name).matches()) {
+				return Optional.of(new ReleaseAsset(name, downloadUrl));
+			}
 		}
-		throw new IllegalArgumentException("File doesn't contain a valid version pattern.");
+		return Optional.empty();
 	}
+
+	private record ReleaseAsset(String name, String downloadUrl) {}
 }
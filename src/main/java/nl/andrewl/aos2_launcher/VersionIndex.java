@@ -0,0 +1,235 @@
+package nl.andrewl.aos2_launcher;
+
+import nl.andrewl.aos2_launcher.util.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory index of the client files in the versions directory, so
+ * that looking up an installed version doesn't need to list and match every
+ * file in the directory. The index is built once, and then kept up-to-date
+ * by a {@link WatchService} that listens for changes to the directory.
+ * <p>
+ *     Lookups read an immutable snapshot of the index without locking.
+ *     Changes are rare, so they copy the snapshot and swap in the new one,
+ *     which means a lookup never sees a half-built index.
+ * </p>
+ */
+class VersionIndex {
+	private final Path dir;
+	private final Pattern officialVersionPattern;
+	private final Pattern versionPattern;
+
+	/**
+	 * A snapshot of the index. Its maps are never modified once published.
+	 * @param official Official version jars, mapped by their version tag,
+	 *                 like "v1.2.3".
+	 * @param files All regular files, including official version jars,
+	 *              mapped by their full file name.
+	 */
+	private record Versions(Map<String, Path> official, Map<String, Path> files) {}
+
+	/**
+	 * The current snapshot, or null until the index is initialized. Changes
+	 * are made while holding this index's monitor.
+	 */
+	private volatile Versions versions = null;
+
+	public VersionIndex(Path dir, Pattern officialVersionPattern, Pattern versionPattern) {
+		this.dir = dir;
+		this.officialVersionPattern = officialVersionPattern;
+		this.versionPattern = versionPattern;
+	}
+
+	/**
+	 * Gets the file for an installed official version.
+	 * @param versionTag The version tag, like "v1.2.3".
+	 * @return The file, if it's installed.
+	 */
+	public Optional<Path> getOfficialVersionFile(String versionTag) {
+		return Optional.ofNullable(ensureInitialized().official().get(versionTag));
+	}
+
+	/**
+	 * Gets the files of all installed official versions.
+	 * @return The files, in no particular order.
+	 */
+	public List<Path> getOfficialVersionFiles() {
+		return new ArrayList<>(ensureInitialized().official().values());
+	}
+
+	/**
+	 * Gets the file for the newest installed official version.
+	 * @return The file, if any official version is installed.
+	 */
+	public Optional<Path> getNewestOfficialVersionFile() {
+		return ensureInitialized().official().entrySet().stream()
+				.max(Map.Entry.comparingByKey(VersionIndex::compareVersionTags))
+				.map(Map.Entry::getValue);
+	}
+
+	/**
+	 * Compares version tags like "v1.2.3" by their numeric components.
+	 */
+	private static int compareVersionTags(String a, String b) {
+		String[] partsA = a.substring(1).split("\\.");
+		String[] partsB = b.substring(1).split("\\.");
+		for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
+			int result = Integer.compare(Integer.parseInt(partsA[i]), Integer.parseInt(partsB[i]));
+			if (result != 0) return result;
+		}
+		return Integer.compare(partsA.length, partsB.length);
+	}
+
+	/**
+	 * Gets the file for a custom version. Like choosing a file by hand, this
+	 * looks for a file with exactly the given name first, and then for one
+	 * with ".jar" appended.
+	 * @param name The name of the version, with or without the ".jar" suffix.
+	 * @return The file, if it exists.
+	 */
+	public Optional<Path> getCustomVersionFile(String name) {
+		if (Path.of(name).getNameCount() != 1) {
+			// Only the directory's own files are indexed, so check anything deeper directly.
+			return FileUtils.getFirstExisting(dir.resolve(name), dir.resolve(name + ".jar"));
+		}
+		Map<String, Path> files = ensureInitialized().files();
+		Path file = files.get(name);
+		if (file == null) file = files.get(name + ".jar");
+		return Optional.ofNullable(file);
+	}
+
+	/**
+	 * Gets the names of all installed versions, which are version tags for
+	 * official versions, and plain file names without ".jar" for others.
+	 * @return A sorted list of version names.
+	 */
+	public List<String> getVersionNames() {
+		Versions v = ensureInitialized();
+		List<String> names = new ArrayList<>(v.files().size());
+		names.addAll(v.official().keySet());
+		for (var filename : v.files().keySet()) {
+			if (filename.endsWith(".jar") && !officialVersionPattern.matcher(filename).matches()) {
+				names.add(filename.substring(0, filename.length() - 4));
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Adds a file to the index right away, without waiting for the watcher
+	 * to notice it. This is used after downloading a new version.
+	 * @param file The file to add.
+	 */
+	public void add(Path file) {
+		ensureInitialized();
+		addFile(file);
+	}
+
+	private Versions ensureInitialized() {
+		Versions v = versions;
+		if (v != null) return v;
+		synchronized (this) {
+			if (versions == null) initialize();
+			return versions;
+		}
+	}
+
+	private void initialize() {
+		try {
+			WatchService watchService = dir.getFileSystem().newWatchService();
+			dir.register(
+					watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE,
+					StandardWatchEventKinds.ENTRY_MODIFY
+			);
+			Thread watcherThread = new Thread(() -> watch(watchService), "version-index-watcher");
+			watcherThread.setDaemon(true);
+			watcherThread.start();
+		} catch (IOException e) {
+			System.err.println("Couldn't watch versions directory for changes: " + e.getMessage());
+		}
+		rebuild();
+	}
+
+	private synchronized void rebuild() {
+		Map<String, Path> official = new HashMap<>();
+		Map<String, Path> files = new HashMap<>();
+		try (var s = Files.list(dir)) {
+			s.forEach(file -> addTo(official, files, file));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		versions = new Versions(official, files);
+	}
+
+	private void watch(WatchService watchService) {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (var event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						rebuild();
+						continue;
+					}
+					Path file = dir.resolve((Path) event.context());
+					if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+						removeFile(file);
+					} else {
+						addFile(file);
+					}
+				}
+				if (!key.reset()) {
+					System.err.println("Versions directory is no longer accessible; stopped watching it.");
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void addFile(Path file) {
+		Map<String, Path> official = new HashMap<>(versions.official());
+		Map<String, Path> files = new HashMap<>(versions.files());
+		if (addTo(official, files, file)) {
+			versions = new Versions(official, files);
+		}
+	}
+
+	private synchronized void removeFile(Path file) {
+		String filename = file.getFileName().toString();
+		Map<String, Path> official = new HashMap<>(versions.official());
+		Map<String, Path> files = new HashMap<>(versions.files());
+		if (files.remove(filename, file)) {
+			if (filename.endsWith(".jar") && officialVersionPattern.matcher(filename).matches()) {
+				official.remove(extractVersion(filename), file);
+			}
+			versions = new Versions(official, files);
+		}
+	}
+
+	private boolean addTo(Map<String, Path> official, Map<String, Path> files, Path file) {
+		if (!Files.isRegularFile(file)) return false;
+		String filename = file.getFileName().toString();
+		files.put(filename, file);
+		if (filename.endsWith(".jar") && officialVersionPattern.matcher(filename).matches()) {
+			official.put(extractVersion(filename), file);
+		}
+		return true;
+	}
+
+	private String extractVersion(String filename) {
+		Matcher matcher = versionPattern.matcher(filename);
+		if (matcher.find()) {
+			return matcher.group();
+		}
+		throw new IllegalArgumentException("File doesn't contain a valid version pattern.");
+	}
+}
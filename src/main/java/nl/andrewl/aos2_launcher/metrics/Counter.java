@@ -0,0 +1,45 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A metric that counts things, and only ever goes up.
+ */
+public class Counter implements Metric {
+	private final String name;
+	private final String help;
+	private final LongAdder count = new LongAdder();
+
+	Counter(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long get() {
+		return count.sum();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getHelp() {
+		return help;
+	}
+
+	@Override
+	public void writePrometheus(StringBuilder sb) {
+		sb.append("# TYPE ").append(name).append(" counter\n");
+		sb.append(name).append(' ').append(get()).append('\n');
+	}
+}
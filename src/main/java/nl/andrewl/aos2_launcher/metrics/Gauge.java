@@ -0,0 +1,49 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric whose value can go up and down, like the number of running games.
+ */
+public class Gauge implements Metric {
+	private final String name;
+	private final String help;
+	private final AtomicLong value = new AtomicLong(0);
+
+	Gauge(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+
+	public void set(long value) {
+		this.value.set(value);
+	}
+
+	public void increment() {
+		value.incrementAndGet();
+	}
+
+	public void decrement() {
+		value.decrementAndGet();
+	}
+
+	public long get() {
+		return value.get();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getHelp() {
+		return help;
+	}
+
+	@Override
+	public void writePrometheus(StringBuilder sb) {
+		sb.append("# TYPE ").append(name).append(" gauge\n");
+		sb.append(name).append(' ').append(get()).append('\n');
+	}
+}
@@ -0,0 +1,136 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with HDR-style log-linear buckets: each power of two
+ * is split into {@value #SUB_BUCKETS} linear sub-buckets, which keeps the
+ * relative error of any recorded value below about 6%, across everything
+ * from microseconds to hours, in a small fixed amount of memory. Recording
+ * is lock-free.
+ */
+public class Histogram implements Metric {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	private static final double[] EXPORTED_QUANTILES = {0.5, 0.9, 0.99};
+
+	private final String name;
+	private final String help;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong(0);
+
+	Histogram(String name, String help) {
+		this.name = name;
+		this.help = help;
+	}
+
+	/**
+	 * Records a duration.
+	 * @param micros The duration, in microseconds.
+	 */
+	public void recordMicros(long micros) {
+		if (micros < 0) micros = 0;
+		counts.incrementAndGet(bucketIndex(micros));
+		count.increment();
+		sumMicros.add(micros);
+		maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 * @param startNanos A start time from {@link System#nanoTime()}.
+	 */
+	public void recordSince(long startNanos) {
+		recordMicros((System.nanoTime() - startNanos) / 1000);
+	}
+
+	/**
+	 * Records the time it takes for a future to complete, whether it
+	 * completes normally or not.
+	 * @param future The future to time.
+	 * @return The same future, for chaining.
+	 * @param <T> The future's result type.
+	 */
+	public <T> CompletableFuture<T> time(CompletableFuture<T> future) {
+		long start = System.nanoTime();
+		future.whenComplete((result, throwable) -> recordSince(start));
+		return future;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSumMicros() {
+		return sumMicros.sum();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Gets an approximate value at the given quantile.
+	 * @param quantile The quantile, between 0 and 1.
+	 * @return The value in microseconds, or 0 if nothing was recorded.
+	 */
+	public long getQuantileMicros(double quantile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) return Math.min(bucketUpperBound(i), getMaxMicros());
+		}
+		return getMaxMicros();
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getHelp() {
+		return help;
+	}
+
+	@Override
+	public void writePrometheus(StringBuilder sb) {
+		sb.append("# TYPE ").append(name).append(" summary\n");
+		for (double quantile : EXPORTED_QUANTILES) {
+			sb.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+					.append(getQuantileMicros(quantile) / 1_000_000.0).append('\n');
+		}
+		sb.append(name).append("_sum ").append(getSumMicros() / 1_000_000.0).append('\n');
+		sb.append(name).append("_count ").append(getCount()).append('\n');
+	}
+}
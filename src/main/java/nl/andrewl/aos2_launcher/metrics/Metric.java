@@ -0,0 +1,16 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+/**
+ * A named metric which can be exported.
+ */
+public interface Metric {
+	String getName();
+	String getHelp();
+
+	/**
+	 * Writes this metric's current value(s) in the Prometheus text format,
+	 * excluding the HELP line.
+	 * @param sb The string builder to write to.
+	 */
+	void writePrometheus(StringBuilder sb);
+}
@@ -0,0 +1,127 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * The launcher's local metrics registry. Metrics are created on first use,
+ * and recording them is cheap and thread-safe, so they can be used directly
+ * on hot paths. Nothing is ever sent anywhere: metrics are only exported to
+ * a Prometheus text file, and as attributes of a JMX MBean so they can be
+ * inspected with tools like JConsole.
+ */
+public final class Metrics {
+	public static final String PREFIX = "aos2_launcher_";
+	private static final long EXPORT_INTERVAL_SECONDS = 30;
+
+	private static final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+	private static ScheduledExecutorService exportExecutor = null;
+
+	private Metrics() {}
+
+	/**
+	 * Gets or creates a counter.
+	 * @param name The name of the counter, without the common prefix.
+	 * @param help A short description of what the counter counts.
+	 * @return The counter.
+	 */
+	public static Counter counter(String name, String help) {
+		return get(name, help, Counter::new, Counter.class);
+	}
+
+	/**
+	 * Gets or creates a gauge.
+	 * @param name The name of the gauge, without the common prefix.
+	 * @param help A short description of what the gauge measures.
+	 * @return The gauge.
+	 */
+	public static Gauge gauge(String name, String help) {
+		return get(name, help, Gauge::new, Gauge.class);
+	}
+
+	/**
+	 * Gets or creates a latency histogram.
+	 * @param name The name of the histogram, without the common prefix.
+	 * @param help A short description of what the histogram measures.
+	 * @return The histogram.
+	 */
+	public static Histogram histogram(String name, String help) {
+		return get(name, help, Histogram::new, Histogram.class);
+	}
+
+	private static <M extends Metric> M get(String name, String help, BiFunction<String, String, M> factory, Class<M> type) {
+		Metric metric = metrics.computeIfAbsent(PREFIX + name, n -> factory.apply(n, help));
+		if (!type.isInstance(metric)) {
+			throw new IllegalStateException("Metric " + metric.getName() + " is not a " + type.getSimpleName());
+		}
+		return type.cast(metric);
+	}
+
+	static Map<String, Metric> getAll() {
+		return metrics;
+	}
+
+	/**
+	 * Renders all metrics in the Prometheus text exposition format.
+	 * @return The text.
+	 */
+	public static String toPrometheusText() {
+		StringBuilder sb = new StringBuilder(4096);
+		for (Metric metric : metrics.values()) {
+			sb.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+			metric.writePrometheus(sb);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Writes all metrics to the given file, replacing it atomically so that
+	 * readers never see a half-written file.
+	 * @param file The file to write to.
+	 * @throws IOException If the file couldn't be written.
+	 */
+	public static void writeTo(Path file) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(tmp, toPrometheusText(), StandardCharsets.UTF_8);
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Starts exporting metrics: registers the JMX MBean, and periodically
+	 * writes all metrics to the given file, as well as once more when the
+	 * JVM shuts down. Calling this more than once has no effect.
+	 * @param file The file to write metrics to.
+	 */
+	public static synchronized void startExporting(Path file) {
+		if (exportExecutor != null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), MetricsMBean.OBJECT_NAME);
+		} catch (Exception e) {
+			System.err.println("Could not register metrics MBean: " + e.getMessage());
+		}
+		exportExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "metrics-exporter");
+			t.setDaemon(true);
+			return t;
+		});
+		Runnable export = () -> {
+			try {
+				writeTo(file);
+			} catch (IOException e) {
+				System.err.println("Could not write metrics: " + e.getMessage());
+			}
+		};
+		exportExecutor.scheduleWithFixedDelay(export, EXPORT_INTERVAL_SECONDS, EXPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		Runtime.getRuntime().addShutdownHook(new Thread(export, "metrics-exporter-shutdown"));
+	}
+}
@@ -0,0 +1,95 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import javax.management.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes every registered metric as read-only JMX attributes. Counters and
+ * gauges are a single attribute each, and histograms have an attribute for
+ * their count and for a few quantiles, in microseconds. Since metrics are
+ * created lazily, the set of attributes grows as the launcher is used.
+ */
+class MetricsMBean implements DynamicMBean {
+	static final ObjectName OBJECT_NAME;
+	static {
+		try {
+			OBJECT_NAME = new ObjectName("nl.andrewl.aos2_launcher:type=Metrics");
+		} catch (MalformedObjectNameException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final String[] HISTOGRAM_SUFFIXES = {"_count", "_p50_micros", "_p90_micros", "_p99_micros", "_max_micros"};
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Metric metric = Metrics.getAll().get(attribute);
+		if (metric instanceof Counter counter) return counter.get();
+		if (metric instanceof Gauge gauge) return gauge.get();
+		for (String suffix : HISTOGRAM_SUFFIXES) {
+			if (!attribute.endsWith(suffix)) continue;
+			String name = attribute.substring(0, attribute.length() - suffix.length());
+			if (Metrics.getAll().get(name) instanceof Histogram histogram) {
+				return switch (suffix) {
+					case "_count" -> histogram.getCount();
+					case "_p50_micros" -> histogram.getQuantileMicros(0.5);
+					case "_p90_micros" -> histogram.getQuantileMicros(0.9);
+					case "_p99_micros" -> histogram.getQuantileMicros(0.99);
+					default -> histogram.getMaxMicros();
+				};
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, getAttribute(attribute)));
+			} catch (AttributeNotFoundException ignored) {}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only.");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (Metric metric : Metrics.getAll().values()) {
+			if (metric instanceof Histogram) {
+				for (String suffix : HISTOGRAM_SUFFIXES) {
+					attributes.add(attribute(metric.getName() + suffix, metric.getHelp()));
+				}
+			} else {
+				attributes.add(attribute(metric.getName(), metric.getHelp()));
+			}
+		}
+		return new MBeanInfo(
+				getClass().getName(),
+				"Local launcher metrics.",
+				attributes.toArray(new MBeanAttributeInfo[0]),
+				null, null, null
+		);
+	}
+
+	private static MBeanAttributeInfo attribute(String name, String description) {
+		return new MBeanAttributeInfo(name, "long", description, true, false, false);
+	}
+}
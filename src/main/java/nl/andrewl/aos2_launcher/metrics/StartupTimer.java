@@ -0,0 +1,65 @@
+package nl.andrewl.aos2_launcher.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records how long the launcher takes to reach each milestone of its
+ * startup, like showing the window, or loading profiles, measured from the
+ * moment that the JVM was started. Milestones can be reached in any order,
+ * from any thread, since some startup work happens in the background. Each
+ * milestone is also exported as a gauge.
+ */
+public final class StartupTimer {
+	/**
+	 * The time at which this class was initialized, which is when the
+	 * launcher's main method was called.
+	 */
+	private static final long MAIN_NANOS = System.nanoTime();
+	/**
+	 * The time between the JVM starting and the main method being called.
+	 */
+	private static final long JVM_TO_MAIN_NANOS = ProcessHandle.current().info().startInstant()
+			.map(start -> Math.max(0, Duration.between(start, Instant.now()).toNanos()))
+			.orElse(0L);
+
+	private static final List<Milestone> milestones = new ArrayList<>();
+
+	private StartupTimer() {}
+
+	private record Milestone(String name, long nanosSinceJvmStart) {}
+
+	/**
+	 * Records that a milestone was reached just now. Only the first time
+	 * that a milestone is reached is recorded.
+	 * @param name The milestone's name, in snake_case, like "first_frame".
+	 */
+	public static synchronized void mark(String name) {
+		for (var milestone : milestones) {
+			if (milestone.name().equals(name)) return;
+		}
+		long nanos = JVM_TO_MAIN_NANOS + (System.nanoTime() - MAIN_NANOS);
+		milestones.add(new Milestone(name, nanos));
+		Metrics.gauge("startup_" + name + "_millis", "Milliseconds from JVM start until the launcher's " + name.replace('_', ' ') + " startup milestone.")
+				.set(nanos / 1_000_000);
+	}
+
+	/**
+	 * Gets a human-readable report of all milestones reached so far, in the
+	 * order they were reached, with the time since the JVM started and the
+	 * time since the previous milestone.
+	 * @return The report.
+	 */
+	public static synchronized String report() {
+		StringBuilder sb = new StringBuilder("Launcher startup (milliseconds since JVM start):\n");
+		long previous = 0;
+		for (var milestone : milestones) {
+			long nanos = milestone.nanosSinceJvmStart();
+			sb.append(String.format("%8d %8s  %s%n", nanos / 1_000_000, "+" + (nanos - previous) / 1_000_000, milestone.name()));
+			previous = nanos;
+		}
+		return sb.toString();
+	}
+}
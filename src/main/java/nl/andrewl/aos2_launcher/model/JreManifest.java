@@ -0,0 +1,62 @@
+package nl.andrewl.aos2_launcher.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Information about an installed JRE, which is recorded after installation
+ * so that we don't need to search the JRE directory to launch the game.
+ * @param executable The path to the java executable, relative to the JRE
+ *                   directory.
+ * @param version The JRE's runtime version, like "17.0.4+8".
+ * @param release The URL of the archive that the JRE was installed from.
+ */
+public record JreManifest(
+		String executable,
+		String version,
+		String release
+) {
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+	/**
+	 * Reads a manifest from a file.
+	 * @param file The file to read.
+	 * @return The manifest, or null if the file doesn't exist or is invalid.
+	 */
+	public static JreManifest load(Path file) {
+		if (!Files.exists(file)) return null;
+		try (var reader = Files.newBufferedReader(file)) {
+			JsonObject obj = GSON.fromJson(reader, JsonObject.class);
+			return new JreManifest(
+					obj.get("executable").getAsString(),
+					getString(obj, "version"),
+					getString(obj, "release")
+			);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Ignoring invalid JRE manifest " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public void save(Path file) throws IOException {
+		JsonObject obj = new JsonObject();
+		obj.addProperty("executable", executable);
+		obj.addProperty("version", version);
+		obj.addProperty("release", release);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(tmp, GSON.toJson(obj));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static String getString(JsonObject obj, String key) {
+		JsonElement element = obj.get(key);
+		return (element == null || element.isJsonNull()) ? null : element.getAsString();
+	}
+}
@@ -9,21 +9,38 @@ import javafx.collections.ObservableList;
 import nl.andrewl.aos2_launcher.Launcher;
 import nl.andrewl.aos2_launcher.VersionFetcher;
 import nl.andrewl.aos2_launcher.util.FileUtils;
+import nl.andrewl.aos2_launcher.util.VirtualThreads;
+import nl.andrewl.aos2_launcher.util.WriteBehindWriter;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * Model for managing the set of profiles in the app.
  */
-public class ProfileSet {
+public class ProfileSet implements AutoCloseable {
+	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
 	private final ObservableList<Profile> profiles;
 	private final ObjectProperty<Profile> selectedProfile;
-	private Path lastFileUsed = null;
+	private volatile Path lastFileUsed = null;
+	private final WriteBehindWriter<Snapshot> writer = new WriteBehindWriter<>(
+			"profile-set-writer",
+			Duration.ofMillis(300),
+			ProfileSet::write
+	);
 
 	public ProfileSet() {
 		this.profiles = FXCollections.observableArrayList();
@@ -36,6 +53,11 @@ public class ProfileSet {
 	}
 
 	public void addNewProfile(Profile profile) {
+		try {
+			createProfileDir(profile);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		profiles.add(profile);
 		save();
 	}
@@ -59,10 +81,43 @@ public class ProfileSet {
 		removeProfile(getSelectedProfile());
 	}
 
+	/**
+	 * Loads profiles from the given file. If the file is missing or corrupt,
+	 * for example because the launcher crashed while saving, we recover from
+	 * the last complete write: a fully-written temporary file that wasn't
+	 * moved into place yet, or else the previous generation of the file.
+	 * @param file The file to load from.
+	 * @throws IOException If neither the file nor any fallback could be read.
+	 */
 	public void load(Path file) throws IOException {
+		try {
+			loadFrom(file);
+			lastFileUsed = file;
+			return;
+		} catch (IOException | RuntimeException e) {
+			List<Path> fallbacks = Files.exists(file) ? List.of(backupFile(file)) : List.of(tempFile(file), backupFile(file));
+			for (Path fallback : fallbacks) {
+				if (!Files.exists(fallback)) continue;
+				try {
+					loadFrom(fallback);
+					System.err.println("Couldn't load profiles from " + file + " (" + e.getMessage() + "). Recovered them from " + fallback + ".");
+					save(file);
+					return;
+				} catch (IOException | RuntimeException fallbackException) {
+					e.addSuppressed(fallbackException);
+				}
+			}
+			if (e instanceof IOException ioe) throw ioe;
+			throw new IOException("Invalid profiles file: " + e.getMessage(), e);
+		}
+	}
+
+	private void loadFrom(Path file) throws IOException {
+		List<Profile> loadedProfiles = new ArrayList<>();
+		Profile loadedSelectedProfile = null;
 		try (var reader = Files.newBufferedReader(file)) {
 			JsonObject data = new Gson().fromJson(reader, JsonObject.class);
-			profiles.clear();
+			if (data == null) throw new IOException("File is empty.");
 			JsonElement selectedProfileIdElement = data.get("selectedProfileId");
 			UUID selectedProfileId = (selectedProfileIdElement == null || selectedProfileIdElement.isJsonNull())
 					? null
@@ -80,27 +135,45 @@ public class ProfileSet {
 					jvmArgs = jvmArgsElement.getAsString();
 				}
 				Profile profile = new Profile(id, name, username, clientVersion, jvmArgs);
-				profiles.add(profile);
-				if (!Files.exists(profile.getDir())) {
-					Files.createDirectory(profile.getDir());
-				}
+				loadedProfiles.add(profile);
 				if (selectedProfileId != null && selectedProfileId.equals(profile.getId())) {
-					selectedProfile.set(profile);
+					loadedSelectedProfile = profile;
 				}
 			}
-			lastFileUsed = file;
 		}
+		// Only apply the data once the whole file has been read successfully.
+		for (Profile profile : loadedProfiles) createProfileDir(profile);
+		profiles.setAll(loadedProfiles);
+		if (loadedSelectedProfile != null) selectedProfile.set(loadedSelectedProfile);
+	}
+
+	/**
+	 * Checks if there's any saved profile data for the given file, including
+	 * data that can be recovered after an interrupted save.
+	 * @param file The profiles file.
+	 * @return True if there's something to load.
+	 */
+	private static boolean hasSavedData(Path file) {
+		return Files.exists(file) || Files.exists(tempFile(file)) || Files.exists(backupFile(file));
+	}
+
+	private static Path tempFile(Path file) {
+		return file.resolveSibling(file.getFileName() + ".tmp");
+	}
+
+	private static Path backupFile(Path file) {
+		return file.resolveSibling(file.getFileName() + ".bak");
 	}
 
 	public CompletableFuture<Void> loadOrCreateStandardFile() {
-		if (!Files.exists(Launcher.PROFILES_FILE)) {
+		if (!hasSavedData(Launcher.PROFILES_FILE)) {
 			return generateStarterProfile().thenRunAsync(() -> {
 				try {
 					save(Launcher.PROFILES_FILE);
 				} catch (IOException e) {
 					throw new UncheckedIOException(e);
 				}
-			});
+			}, VirtualThreads.executor());
 		} else {
 			return CompletableFuture.runAsync(() -> {
 				try {
@@ -108,7 +181,7 @@ public class ProfileSet {
 				} catch (IOException e) {
 					throw new UncheckedIOException(e);
 				}
-			});
+			}, VirtualThreads.executor());
 		}
 
 	}
@@ -118,6 +191,11 @@ public class ProfileSet {
 			if (releases.isEmpty()) throw new RuntimeException("Couldn't find any releases.");
 			var latestRelease = releases.get(0);
 			Profile profile = new Profile(UUID.randomUUID(), "My Profile", "Player", latestRelease.tag(), null);
+			try {
+				createProfileDir(profile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 			CompletableFuture<Void> cf = new CompletableFuture<>();
 			Platform.runLater(() -> {
 				this.profiles.add(profile);
@@ -128,41 +206,104 @@ public class ProfileSet {
 		});
 	}
 
+	/**
+	 * Saves the profiles to the given file right away. This goes through the
+	 * same writer as background saves, so the two never write at once.
+	 * @param file The file to save to.
+	 * @throws IOException If the file couldn't be written.
+	 */
 	public void save(Path file) throws IOException {
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		JsonObject data = new JsonObject();
+		writer.writeNow(snapshot(file));
+		lastFileUsed = file;
+	}
+
+	/**
+	 * Saves the profiles to the file they were last loaded from or saved to.
+	 * The write happens on a background thread after a short quiet period,
+	 * so that a burst of changes results in just one write.
+	 */
+	public void save() {
+		Path file = lastFileUsed;
+		if (file != null) {
+			writer.submit(snapshot(file));
+		}
+	}
+
+	/**
+	 * Writes any pending changes right away.
+	 */
+	public void flush() {
+		writer.flush();
+	}
+
+	/**
+	 * Writes any pending changes, and releases the background writer. The
+	 * profile set can't be saved in the background afterwards.
+	 */
+	@Override
+	public void close() {
+		writer.close();
+	}
+
+	private Snapshot snapshot(Path file) {
 		String selectedProfileId = selectedProfile.getValue() == null ? null : selectedProfile.getValue().getId().toString();
-		data.addProperty("selectedProfileId", selectedProfileId);
-		JsonArray profilesArray = new JsonArray(profiles.size());
+		List<ProfileData> profileData = new ArrayList<>(profiles.size());
 		for (Profile profile : profiles) {
+			profileData.add(new ProfileData(
+					profile.getId().toString(),
+					profile.getName(),
+					profile.getUsername(),
+					profile.getClientVersion(),
+					profile.getJvmArgs()
+			));
+		}
+		return new Snapshot(file, selectedProfileId, profileData);
+	}
+
+	private static void write(Snapshot snapshot) throws IOException {
+		JsonObject data = new JsonObject();
+		data.addProperty("selectedProfileId", snapshot.selectedProfileId());
+		JsonArray profilesArray = new JsonArray(snapshot.profiles().size());
+		for (ProfileData profile : snapshot.profiles()) {
 			JsonObject obj = new JsonObject();
-			obj.addProperty("id", profile.getId().toString());
-			obj.addProperty("name", profile.getName());
-			obj.addProperty("username", profile.getUsername());
-			obj.addProperty("clientVersion", profile.getClientVersion());
-			obj.addProperty("jvmArgs", profile.getJvmArgs());
+			obj.addProperty("id", profile.id());
+			obj.addProperty("name", profile.name());
+			obj.addProperty("username", profile.username());
+			obj.addProperty("clientVersion", profile.clientVersion());
+			obj.addProperty("jvmArgs", profile.jvmArgs());
 			profilesArray.add(obj);
-			if (!Files.exists(profile.getDir())) {
-				Files.createDirectory(profile.getDir());
-			}
 		}
 		data.add("profiles", profilesArray);
-		try (var writer = Files.newBufferedWriter(file)) {
-			gson.toJson(data, writer);
+		// Write the new data to a temporary file and sync it to disk, then
+		// swap it in, keeping the previous generation as a backup. At no
+		// point is there only a partially-written file to load from.
+		Path file = snapshot.file();
+		Path tmp = tempFile(file);
+		ByteBuffer buffer = StandardCharsets.UTF_8.encode(GSON.toJson(data));
+		try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) channel.write(buffer);
+			channel.force(true);
 		}
-		lastFileUsed = file;
+		if (Files.exists(file)) {
+			Files.move(file, backupFile(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
 	}
 
-	public void save() {
-		if (lastFileUsed != null) {
-			try {
-				save(lastFileUsed);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+	private static void createProfileDir(Profile profile) throws IOException {
+		if (!Files.exists(profile.getDir())) {
+			Files.createDirectory(profile.getDir());
 		}
 	}
 
+	/**
+	 * An immutable copy of the profile set's data, and the file to write it
+	 * to, which can be written from any thread.
+	 */
+	private record Snapshot(Path file, String selectedProfileId, List<ProfileData> profiles) {}
+
+	private record ProfileData(String id, String name, String username, String clientVersion, String jvmArgs) {}
+
 	public ObservableList<Profile> getProfiles() {
 		return profiles;
 	}
@@ -1,8 +1,29 @@
 package nl.andrewl.aos2_launcher.model;
 
 public interface ProgressReporter {
+	/**
+	 * A reporter that ignores all progress, for work that happens in the
+	 * background without being shown to the user.
+	 */
+	ProgressReporter NONE = new ProgressReporter() {
+		@Override public void enableProgress() {}
+		@Override public void disableProgress() {}
+		@Override public void setActionText(String text) {}
+		@Override public void setProgress(double progress) {}
+	};
+
 	void enableProgress();
 	void disableProgress();
 	void setActionText(String text);
 	void setProgress(double progress);
+
+	/**
+	 * Reports progress in terms of bytes, for things like downloads, so that
+	 * reporters can show transfer rates as well as the fraction done.
+	 * @param bytesDone The number of bytes done so far.
+	 * @param totalBytes The total number of bytes, or -1 if unknown.
+	 */
+	default void setProgressBytes(long bytesDone, long totalBytes) {
+		setProgress(totalBytes > 0 ? (double) bytesDone / totalBytes : -1);
+	}
 }
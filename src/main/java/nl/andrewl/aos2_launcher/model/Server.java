@@ -14,6 +14,11 @@ public class Server {
 	private final IntegerProperty maxPlayers;
 	private final IntegerProperty currentPlayers;
 	private final ObjectProperty<LocalDateTime> lastUpdatedAt;
+	/**
+	 * The most recently measured latency to this server, in milliseconds, or
+	 * -1 if it's not known.
+	 */
+	private final LongProperty latency;
 
 	public Server(String host, int port, String name, String description, int maxPlayers, int currentPlayers, long lastUpdatedAt) {
 		this.host = new SimpleStringProperty(host);
@@ -24,6 +29,29 @@ public class Server {
 		this.currentPlayers = new SimpleIntegerProperty(currentPlayers);
 		LocalDateTime ts = Instant.ofEpochMilli(lastUpdatedAt).atZone(ZoneId.systemDefault()).toLocalDateTime();
 		this.lastUpdatedAt = new SimpleObjectProperty<>(ts);
+		this.latency = new SimpleLongProperty(-1);
+	}
+
+	/**
+	 * Updates this server's registry information in-place from a freshly
+	 * fetched copy of the same server, so that any views bound to this
+	 * server's properties are updated.
+	 * @param other The freshly fetched server.
+	 */
+	public void update(Server other) {
+		name.set(other.getName());
+		description.set(other.getDescription());
+		maxPlayers.set(other.getMaxPlayers());
+		currentPlayers.set(other.getCurrentPlayers());
+		lastUpdatedAt.set(other.getLastUpdatedAt());
+	}
+
+	/**
+	 * Gets a key that uniquely identifies this server's address.
+	 * @return A key of the form "host:port".
+	 */
+	public String getAddressKey() {
+		return getHost() + ":" + getPort();
 	}
 
 	public String getHost() {
@@ -81,4 +109,16 @@ public class Server {
 	public Property<LocalDateTime> lastUpdatedAtProperty() {
 		return lastUpdatedAt;
 	}
+
+	public long getLatency() {
+		return latency.get();
+	}
+
+	public LongProperty latencyProperty() {
+		return latency;
+	}
+
+	public void setLatency(long latency) {
+		this.latency.set(latency);
+	}
 }
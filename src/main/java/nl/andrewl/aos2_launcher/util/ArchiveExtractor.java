@@ -0,0 +1,305 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Pure-Java extraction of .tar.gz and .zip archives, which works directly on
+ * a stream of bytes, so that an archive can be unpacked while it's still
+ * being downloaded, instead of being read back from disk afterwards.
+ */
+public class ArchiveExtractor {
+	private static final int TAR_BLOCK_SIZE = 512;
+	private static final int MAX_LINK_DEPTH = 40;
+	private static final boolean POSIX_SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	/**
+	 * Extracts a gzip-compressed tar archive into a directory. File modes
+	 * are preserved on systems that support POSIX permissions, so that
+	 * executables like bin/java stay executable.
+	 * @param in The stream to read the archive from.
+	 * @param dir The directory to extract into.
+	 * @throws IOException If the archive is invalid or couldn't be written.
+	 */
+	public static void extractTarGz(InputStream in, Path dir) throws IOException {
+		Path root = dir.toAbsolutePath().normalize();
+		Files.createDirectories(root);
+		Path realRoot = root.toRealPath();
+		InputStream tarIn = new GZIPInputStream(in, 65536);
+		byte[] header = new byte[TAR_BLOCK_SIZE];
+		byte[] buffer = new byte[65536];
+		String longName = null;
+		String longLinkName = null;
+		// Directory modes are applied last, so that a read-only directory can still be filled.
+		LinkedHashMap<Path, Integer> directoryModes = new LinkedHashMap<>();
+		while (true) {
+			readFully(tarIn, header, TAR_BLOCK_SIZE);
+			if (isZeroBlock(header)) break; // The end of the archive is marked by zero blocks.
+			String name = readString(header, 0, 100);
+			int mode = (int) readNumber(header, 100, 8);
+			long size = readNumber(header, 124, 12);
+			char type = (char) header[156];
+			String linkName = readString(header, 157, 100);
+			// Only POSIX ustar headers have a name prefix; old GNU headers use those bytes for other things.
+			if (readString(header, 257, 6).equals("ustar") && header[263] == '0' && header[264] == '0') {
+				String prefix = readString(header, 345, 155);
+				if (!prefix.isEmpty()) name = prefix + "/" + name;
+			}
+
+			// Extended headers apply to the next entry.
+			if (type == 'L' || type == 'K' || type == 'x') {
+				String data = new String(readEntryData(tarIn, size), StandardCharsets.UTF_8);
+				if (type == 'L') {
+					longName = trimNulls(data);
+				} else if (type == 'K') {
+					longLinkName = trimNulls(data);
+				} else {
+					String paxPath = readPaxValue(data, "path");
+					String paxLinkPath = readPaxValue(data, "linkpath");
+					if (paxPath != null) longName = paxPath;
+					if (paxLinkPath != null) longLinkName = paxLinkPath;
+				}
+				continue;
+			}
+			if (longName != null) name = longName;
+			if (longLinkName != null) linkName = longLinkName;
+			longName = null;
+			longLinkName = null;
+
+			Path target = resolveEntry(root, name);
+			if (type == '5') {
+				createDirectories(realRoot, target);
+				directoryModes.put(target, mode);
+			} else if (type == '2') {
+				createDirectories(realRoot, target.getParent());
+				Path linkTarget = Path.of(linkName);
+				if (followLink(realRoot, target.getParent().toRealPath(), linkTarget, 0) == null) {
+					throw new IOException("Archive link points outside of the target directory: " + name + " -> " + linkName);
+				}
+				Files.deleteIfExists(target);
+				Files.createSymbolicLink(target, linkTarget);
+			} else if (type == '1') {
+				// Hard links name another entry in the archive, relative to its root.
+				Path source = resolveEntry(root, linkName);
+				createDirectories(realRoot, target.getParent());
+				if (!Files.isRegularFile(source) || !source.toRealPath().startsWith(realRoot)) {
+					throw new IOException("Archive hard link doesn't point to an extracted file: " + name + " -> " + linkName);
+				}
+				Files.deleteIfExists(target);
+				try {
+					Files.createLink(target, source);
+				} catch (IOException | UnsupportedOperationException e) {
+					Files.copy(source, target);
+				}
+			} else if (type == '0' || type == '\0' || type == '7') {
+				createDirectories(realRoot, target.getParent());
+				// Never write through a link that an earlier entry left in this place.
+				if (Files.isSymbolicLink(target)) Files.delete(target);
+				try (var out = Files.newOutputStream(target)) {
+					copyEntryData(tarIn, out, size, buffer);
+				}
+				setMode(target, mode);
+				skipPadding(tarIn, size);
+				continue;
+			}
+			// Skip the data of anything else, like global headers or devices.
+			skipFully(tarIn, size);
+			skipPadding(tarIn, size);
+		}
+		// Deepest directories first, so that a parent's mode can't lock us out of its children.
+		for (var entry : directoryModes.reversed().entrySet()) {
+			setMode(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Extracts a zip archive into a directory.
+	 * @param in The stream to read the archive from.
+	 * @param dir The directory to extract into.
+	 * @throws IOException If the archive is invalid or couldn't be written.
+	 */
+	public static void extractZip(InputStream in, Path dir) throws IOException {
+		Path root = dir.toAbsolutePath().normalize();
+		Files.createDirectories(root);
+		Path realRoot = root.toRealPath();
+		ZipInputStream zipIn = new ZipInputStream(in);
+		ZipEntry entry;
+		while ((entry = zipIn.getNextEntry()) != null) {
+			Path target = resolveEntry(root, entry.getName());
+			if (entry.isDirectory()) {
+				createDirectories(realRoot, target);
+			} else {
+				createDirectories(realRoot, target.getParent());
+				try (var out = Files.newOutputStream(target)) {
+					zipIn.transferTo(out);
+				}
+			}
+		}
+	}
+
+	private static Path resolveEntry(Path root, String name) throws IOException {
+		Path target = root.resolve(name).normalize();
+		if (!target.startsWith(root)) {
+			throw new IOException("Archive entry is outside of the target directory: " + name);
+		}
+		return target;
+	}
+
+	/**
+	 * Creates a directory and its parents, after checking that the part of
+	 * the path that already exists doesn't lead outside the target directory
+	 * through a link.
+	 * @param realRoot The real path of the target directory.
+	 * @param path The directory to create.
+	 * @throws IOException If the directory would be outside the target
+	 * directory, or couldn't be created.
+	 */
+	private static void createDirectories(Path realRoot, Path path) throws IOException {
+		Path existing = path;
+		while (!Files.exists(existing, LinkOption.NOFOLLOW_LINKS)) existing = existing.getParent();
+		if (!existing.toRealPath().startsWith(realRoot)) {
+			throw new IOException("Archive entry is outside of the target directory: " + path);
+		}
+		Files.createDirectories(path);
+	}
+
+	/**
+	 * Follows a symbolic link's target one name at a time, like the OS
+	 * would, so that a ".." after another link is resolved from where that
+	 * link leads. Links that don't exist yet are simply followed further.
+	 * @param realRoot The real path of the target directory.
+	 * @param realDir The real path of the directory containing the link.
+	 * @param linkTarget The link's target.
+	 * @param depth The number of links followed so far.
+	 * @return The path that the link leads to, or null if it, or any step
+	 * along the way, is outside the target directory.
+	 * @throws IOException If a link couldn't be read.
+	 */
+	private static Path followLink(Path realRoot, Path realDir, Path linkTarget, int depth) throws IOException {
+		if (linkTarget.isAbsolute() || depth > MAX_LINK_DEPTH) return null;
+		Path current = realDir;
+		for (Path element : linkTarget) {
+			String part = element.toString();
+			if (part.equals(".")) continue;
+			current = part.equals("..") ? current.getParent() : current.resolve(part);
+			if (current == null || !current.startsWith(realRoot)) return null;
+			if (Files.isSymbolicLink(current)) {
+				current = followLink(realRoot, current.getParent(), Files.readSymbolicLink(current), depth + 1);
+				if (current == null) return null;
+			}
+		}
+		return current;
+	}
+
+	private static void setMode(Path file, int mode) throws IOException {
+		if (!POSIX_SUPPORTED) return;
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		PosixFilePermission[] values = PosixFilePermission.values(); // Ordered from OWNER_READ to OTHERS_EXECUTE.
+		for (int i = 0; i < values.length; i++) {
+			if ((mode & (1 << (values.length - 1 - i))) != 0) permissions.add(values[i]);
+		}
+		Files.setPosixFilePermissions(file, permissions);
+	}
+
+	private static byte[] readEntryData(InputStream in, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) throw new IOException("Extended tar header is too large.");
+		byte[] data = new byte[(int) size];
+		readFully(in, data, data.length);
+		skipPadding(in, size);
+		return data;
+	}
+
+	private static void copyEntryData(InputStream in, OutputStream out, long size, byte[] buffer) throws IOException {
+		long remaining = size;
+		while (remaining > 0) {
+			int readCount = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (readCount == -1) throw new EOFException("Unexpected end of tar archive.");
+			out.write(buffer, 0, readCount);
+			remaining -= readCount;
+		}
+	}
+
+	private static void skipPadding(InputStream in, long size) throws IOException {
+		long remainder = size % TAR_BLOCK_SIZE;
+		if (remainder != 0) skipFully(in, TAR_BLOCK_SIZE - remainder);
+	}
+
+	private static void skipFully(InputStream in, long count) throws IOException {
+		long remaining = count;
+		while (remaining > 0) {
+			long skipped = in.skip(remaining);
+			if (skipped <= 0) {
+				if (in.read() == -1) throw new EOFException("Unexpected end of tar archive.");
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int readCount = in.read(buffer, offset, length - offset);
+			if (readCount == -1) throw new EOFException("Unexpected end of tar archive.");
+			offset += readCount;
+		}
+	}
+
+	private static boolean isZeroBlock(byte[] block) {
+		for (byte b : block) {
+			if (b != 0) return false;
+		}
+		return true;
+	}
+
+	private static String readString(byte[] header, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) end++;
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static long readNumber(byte[] header, int offset, int length) {
+		// Large values may be stored in base-256, which is marked by the high bit.
+		if ((header[offset] & 0x80) != 0) {
+			long value = header[offset] & 0x7F;
+			for (int i = 1; i < length; i++) {
+				value = (value << 8) | (header[offset + i] & 0xFF);
+			}
+			return value;
+		}
+		String octal = readString(header, offset, length).trim();
+		return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+	}
+
+	private static String readPaxValue(String data, String key) {
+		// Records have the form "<length> <key>=<value>\n".
+		for (String record : data.split("\n")) {
+			int space = record.indexOf(' ');
+			int equals = record.indexOf('=');
+			if (space == -1 || equals == -1) continue;
+			if (record.substring(space + 1, equals).equals(key)) {
+				return record.substring(equals + 1);
+			}
+		}
+		return null;
+	}
+
+	private static String trimNulls(String s) {
+		int end = s.indexOf('\0');
+		return end == -1 ? s : s.substring(0, end);
+	}
+}
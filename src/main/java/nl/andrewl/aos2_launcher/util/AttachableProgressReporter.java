@@ -0,0 +1,72 @@
+package nl.andrewl.aos2_launcher.util;
+
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+/**
+ * A progress reporter for a task that others may start waiting on while it's
+ * already running, like a download that was started in the background and
+ * is then needed by the user. Updates are forwarded to whichever reporter
+ * was attached last, and a newly attached reporter is first brought up to
+ * date with the task's current state.
+ */
+public class AttachableProgressReporter implements ProgressReporter {
+	private ProgressReporter target;
+	private boolean enabled = false;
+	private String actionText = null;
+	private double progress = -1;
+	private long bytesDone = -1;
+	private long totalBytes = -1;
+
+	public AttachableProgressReporter(ProgressReporter target) {
+		this.target = target;
+	}
+
+	/**
+	 * Sends all further updates to the given reporter instead of the current
+	 * one, starting with the current state.
+	 * @param reporter The reporter to attach.
+	 */
+	public synchronized void attach(ProgressReporter reporter) {
+		target = reporter;
+		if (!enabled) return;
+		reporter.enableProgress();
+		reporter.setActionText(actionText);
+		if (bytesDone >= 0) {
+			reporter.setProgressBytes(bytesDone, totalBytes);
+		} else {
+			reporter.setProgress(progress);
+		}
+	}
+
+	@Override
+	public synchronized void enableProgress() {
+		enabled = true;
+		target.enableProgress();
+	}
+
+	@Override
+	public synchronized void disableProgress() {
+		enabled = false;
+		target.disableProgress();
+	}
+
+	@Override
+	public synchronized void setActionText(String text) {
+		actionText = text;
+		target.setActionText(text);
+	}
+
+	@Override
+	public synchronized void setProgress(double progress) {
+		this.progress = progress;
+		bytesDone = -1;
+		target.setProgress(progress);
+	}
+
+	@Override
+	public synchronized void setProgressBytes(long bytesDone, long totalBytes) {
+		this.bytesDone = bytesDone;
+		this.totalBytes = totalBytes;
+		target.setProgressBytes(bytesDone, totalBytes);
+	}
+}
@@ -0,0 +1,142 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Writes logs on a single background thread, so that whoever produces the
+ * output never waits for the disk. Output is queued up to a fixed number of
+ * bytes, shared by all logs; anything beyond that is dropped rather than
+ * making the producer wait, and a note of how much was dropped is written
+ * once there's room again. Logs are flushed whenever the queue runs empty,
+ * instead of after every write.
+ */
+public class BackgroundLogWriter {
+	private record Task(Log log, byte[] bytes, boolean close) {}
+
+	private final long maxQueuedBytes;
+	private final AtomicLong queuedBytes = new AtomicLong(0);
+	private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * Creates a log writer, and starts its thread.
+	 * @param threadName The name of the writer thread.
+	 * @param maxQueuedBytes The maximum number of bytes waiting to be written.
+	 */
+	public BackgroundLogWriter(String threadName, long maxQueuedBytes) {
+		this.maxQueuedBytes = maxQueuedBytes;
+		Thread thread = new Thread(this::run, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts writing to a log file.
+	 * @param writer The log file to write to. From now on, it's only used by
+	 *               the writer thread.
+	 * @param errorHandler Called on the writer thread when the log couldn't
+	 *                     be written.
+	 * @return The log to queue output for.
+	 */
+	public Log open(RotatingLogWriter writer, Consumer<IOException> errorHandler) {
+		return new Log(writer, errorHandler);
+	}
+
+	/**
+	 * A log file that's written by the background thread.
+	 */
+	public class Log {
+		private final RotatingLogWriter writer;
+		private final Consumer<IOException> errorHandler;
+		private long droppedBytes = 0;
+
+		private Log(RotatingLogWriter writer, Consumer<IOException> errorHandler) {
+			this.writer = writer;
+			this.errorHandler = errorHandler;
+		}
+
+		/**
+		 * Queues output to be written. This never blocks.
+		 * @param bytes The buffer holding the output. It's copied, so it can be
+		 *              reused right away.
+		 * @param offset The offset of the output in the buffer.
+		 * @param length The length of the output.
+		 * @return True if the output was queued, or false if it was dropped
+		 * because the queue is full.
+		 */
+		public synchronized boolean write(byte[] bytes, int offset, int length) {
+			if (droppedBytes > 0) {
+				byte[] note = ("[" + droppedBytes + " bytes of output were dropped, because the log couldn't keep up]" + System.lineSeparator())
+						.getBytes(StandardCharsets.UTF_8);
+				if (!enqueue(note)) {
+					droppedBytes += length;
+					return false;
+				}
+				droppedBytes = 0;
+			}
+			byte[] copy = new byte[length];
+			System.arraycopy(bytes, offset, copy, 0, length);
+			if (!enqueue(copy)) {
+				droppedBytes += length;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Closes the log file once everything queued before has been written.
+		 */
+		public void close() {
+			queue.add(new Task(this, null, true));
+		}
+
+		private boolean enqueue(byte[] bytes) {
+			if (queuedBytes.addAndGet(bytes.length) > maxQueuedBytes) {
+				queuedBytes.addAndGet(-bytes.length);
+				return false;
+			}
+			queue.add(new Task(this, bytes, false));
+			return true;
+		}
+	}
+
+	private void run() {
+		Set<Log> unflushedLogs = new HashSet<>();
+		try {
+			while (true) {
+				Task task = queue.poll();
+				if (task == null) {
+					for (Log log : unflushedLogs) {
+						try {
+							log.writer.flush();
+						} catch (IOException e) {
+							log.errorHandler.accept(e);
+						}
+					}
+					unflushedLogs.clear();
+					task = queue.take();
+				}
+				try {
+					if (task.close()) {
+						unflushedLogs.remove(task.log());
+						task.log().writer.close();
+					} else {
+						queuedBytes.addAndGet(-task.bytes().length);
+						task.log().writer.write(task.bytes(), 0, task.bytes().length);
+						unflushedLogs.add(task.log());
+					}
+				} catch (IOException e) {
+					task.log().errorHandler.accept(e);
+				}
+			}
+		} catch (InterruptedException ignored) {
+			// Only happens when the JVM exits, since the thread is a daemon.
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package nl.andrewl.aos2_launcher.util;
+
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.io.PrintStream;
+
+/**
+ * A progress reporter that prints to the console, for when the launcher runs
+ * without a window. To keep the output readable, progress is only printed
+ * every ten percent.
+ */
+public class ConsoleProgressReporter implements ProgressReporter {
+	private final PrintStream out;
+	private String actionText = null;
+	private int lastPercentage = -1;
+
+	public ConsoleProgressReporter(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public synchronized void enableProgress() {
+		lastPercentage = -1;
+	}
+
+	@Override
+	public synchronized void disableProgress() {
+		actionText = null;
+	}
+
+	@Override
+	public synchronized void setActionText(String text) {
+		if (text == null || text.equals(actionText)) return;
+		actionText = text;
+		lastPercentage = -1;
+		out.println(text);
+	}
+
+	@Override
+	public synchronized void setProgress(double progress) {
+		if (progress < 0) return;
+		int percentage = (int) (progress * 10) * 10;
+		if (percentage <= lastPercentage) return;
+		lastPercentage = percentage;
+		out.println("  " + percentage + "%");
+	}
+
+	@Override
+	public synchronized void setProgressBytes(long bytesDone, long totalBytes) {
+		if (totalBytes <= 0) return;
+		double progress = (double) bytesDone / totalBytes;
+		int percentage = (int) (progress * 10) * 10;
+		if (percentage <= lastPercentage) return;
+		lastPercentage = percentage;
+		out.println("  " + percentage + "% (" + FileUtils.humanReadableByteCountSI(bytesDone) + " of " + FileUtils.humanReadableByteCountSI(totalBytes) + ")");
+	}
+}
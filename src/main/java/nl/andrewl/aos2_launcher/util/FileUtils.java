@@ -1,21 +1,50 @@
 package nl.andrewl.aos2_launcher.util;
 
 import javafx.scene.image.Image;
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Histogram;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
 import nl.andrewl.aos2_launcher.model.ProgressReporter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 
 public class FileUtils {
+	private static final int DOWNLOAD_SEGMENTS = 4;
+	private static final long MIN_DOWNLOAD_SEGMENT_SIZE = 1024 * 1024;
+	private static final long STATE_SAVE_INTERVAL_MS = 1000;
+	private static final int STREAM_TEE_CHUNKS = 128;
+
+	private static final Histogram DOWNLOAD_TIME = Metrics.histogram("download_seconds", "Time to download a file, including any resumed or failed attempts.");
+	private static final Counter DOWNLOADED_BYTES = Metrics.counter("downloaded_bytes_total", "Number of bytes received by file downloads.");
+	private static final Counter DOWNLOAD_FAILURES = Metrics.counter("download_failures_total", "Number of failed file downloads.");
+	private static final Counter STATE_SAVE_FAILURES = Metrics.counter("download_state_save_failures_total", "Number of times that a partial download's state couldn't be saved.");
+	private static final Counter DOWNLOADS_RESUMED = Metrics.counter("downloads_resumed_total", "Number of file downloads resumed from a partial download.");
+
 	public static String humanReadableByteCountSI(long bytes) {
 		if (-1000 < bytes && bytes < 1000) {
 			return bytes + " B";
@@ -59,21 +88,443 @@ public class FileUtils {
 		});
 	}
 
+	/**
+	 * Downloads the resource at the given URI to a file. If the server
+	 * advertises support for byte ranges, the resource is split into several
+	 * segments that are fetched in parallel and written directly into their
+	 * position in the file. Otherwise, it's downloaded as a single stream.
+	 * <p>
+	 *     Data is written to a ".part" file next to the output file, which is
+	 *     only moved into place once the download is complete. For range
+	 *     downloads, a ".part.json" sidecar records the URL, ETag and bytes
+	 *     done for each segment, so that a failed download can be continued
+	 *     by calling this method again, even after restarting the launcher.
+	 * </p>
+	 * @param network The network service to send requests with.
+	 * @param uri The URI of the resource to download.
+	 * @param outputFile The file to write to.
+	 * @param reporter A progress reporter to visualize the progress.
+	 * @throws IOException If the download fails.
+	 */
+	public static void downloadWithProgress(NetworkService network, URI uri, Path outputFile, ProgressReporter reporter) throws IOException {
+		long startTime = System.nanoTime();
+		try {
+			download(network, uri, outputFile, reporter);
+		} catch (IOException | RuntimeException e) {
+			DOWNLOAD_FAILURES.increment();
+			throw e;
+		} finally {
+			DOWNLOAD_TIME.recordSince(startTime);
+		}
+	}
+
+	/**
+	 * Something that reads a downloaded stream, like an archive extractor.
+	 */
+	@FunctionalInterface
+	public interface StreamConsumer {
+		void accept(InputStream in) throws IOException;
+	}
+
+	/**
+	 * Downloads the resource at the given URI to a file, and passes its bytes
+	 * to a consumer as they arrive, so that for example an archive can be
+	 * unpacked during the download, instead of reading it back from disk
+	 * afterwards.
+	 * <p>
+	 *     The bytes are written to a ".part" file along the way, with a
+	 *     sidecar like {@link #downloadWithProgress(NetworkService, URI, Path, ProgressReporter)}
+	 *     writes, so a failed download isn't lost. If an earlier attempt left
+	 *     such a partial download behind, it's continued with range requests
+	 *     instead, and the consumer then reads the finished file. The same
+	 *     goes for an output file that already exists. If the consumer fails,
+	 *     the downloaded data is discarded, since it's probably corrupt.
+	 * </p>
+	 * @param network The network service to send requests with.
+	 * @param uri The URI of the resource to download.
+	 * @param outputFile The file to write to.
+	 * @param reporter A progress reporter to visualize the progress.
+	 * @param consumer The consumer to pass the resource's bytes to.
+	 * @throws IOException If the download or the consumer fails.
+	 */
+	public static void downloadAndConsume(NetworkService network, URI uri, Path outputFile, ProgressReporter reporter, StreamConsumer consumer) throws IOException {
+		Path partFile = outputFile.resolveSibling(outputFile.getFileName() + ".part");
+		Path stateFile = outputFile.resolveSibling(outputFile.getFileName() + ".part.json");
+		if (!Files.exists(outputFile)) {
+			if (Files.exists(partFile) && Files.exists(stateFile)) {
+				downloadWithProgress(network, uri, outputFile, reporter);
+			} else {
+				long startTime = System.nanoTime();
+				try {
+					streamDownload(network, uri, outputFile, partFile, stateFile, reporter, consumer);
+					return;
+				} catch (IOException | RuntimeException e) {
+					DOWNLOAD_FAILURES.increment();
+					throw e;
+				} finally {
+					DOWNLOAD_TIME.recordSince(startTime);
+				}
+			}
+		}
+		try (var in = new ProgressInputStream(Files.newInputStream(outputFile), Files.size(outputFile), reporter)) {
+			consumer.accept(in);
+		} catch (IOException e) {
+			Files.deleteIfExists(outputFile);
+			throw e;
+		}
+	}
+
+	private static void streamDownload(
+			NetworkService network,
+			URI uri,
+			Path outputFile,
+			Path partFile,
+			Path stateFile,
+			ProgressReporter reporter,
+			StreamConsumer consumer
+	) throws IOException {
+		Files.deleteIfExists(stateFile);
+		HttpRequest request = network.request(uri).GET().timeout(Duration.ofMinutes(5)).build();
+		HttpResponse<InputStream> resp = send(network, request, HttpResponse.BodyHandlers.ofInputStream());
+		if (resp.statusCode() != 200) {
+			resp.body().close();
+			throw new IOException("Download failed: " + resp.statusCode());
+		}
+		long size = resp.headers().firstValueAsLong("Content-Length").orElse(-1);
+		String etag = resp.headers().firstValue("ETag")
+				.filter(tag -> !tag.startsWith("W/"))
+				.orElse(null);
+		// Only keep state for a later resume if the server would let us resume.
+		PartialDownload download = size > 0 && resp.headers().allValues("Accept-Ranges").contains("bytes")
+				? PartialDownload.create(uri.toString(), etag, size, 1)
+				: null;
+
+		StreamTee tee = new StreamTee();
+		CompletableFuture<Void> consumed = CompletableFuture.runAsync(() -> {
+			try (tee) {
+				consumer.accept(tee);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, VirtualThreads.executor());
+
+		IOException downloadFailure = null;
+		reporter.setProgressBytes(0, size);
+		try (var in = resp.body(); var channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			try {
+				byte[] buffer = new byte[8192];
+				long bytesDone = 0;
+				long lastStateSave = System.currentTimeMillis();
+				int readCount;
+				// Stop early if the consumer failed, since we'd discard the data anyway.
+				while (!consumed.isCompletedExceptionally() && (readCount = in.read(buffer)) != -1) {
+					ByteBuffer buf = ByteBuffer.wrap(buffer, 0, readCount);
+					while (buf.hasRemaining()) channel.write(buf);
+					tee.write(buffer, 0, readCount);
+					bytesDone += readCount;
+					DOWNLOADED_BYTES.add(readCount);
+					reporter.setProgressBytes(bytesDone, size);
+					if (download != null) {
+						download.addSegmentBytesDone(0, readCount);
+						long now = System.currentTimeMillis();
+						if (now - lastStateSave > STATE_SAVE_INTERVAL_MS) {
+							lastStateSave = now;
+							try {
+								saveState(download, channel, stateFile);
+							} catch (IOException e) {
+								STATE_SAVE_FAILURES.increment();
+							}
+						}
+					}
+				}
+				if (!consumed.isCompletedExceptionally() && size > 0 && bytesDone != size) {
+					throw new IOException("Incomplete download: expected " + size + " bytes, got " + bytesDone);
+				}
+				tee.finish();
+			} catch (IOException e) {
+				downloadFailure = e;
+				tee.fail(e);
+				if (download != null) {
+					// Record how far we got, so a later attempt can continue from here.
+					try {
+						saveState(download, channel, stateFile);
+					} catch (IOException saveFailure) {
+						STATE_SAVE_FAILURES.increment();
+						e.addSuppressed(saveFailure);
+					}
+				}
+			}
+		}
+
+		// Wait for the consumer even if the download failed, so it's not still working when we return.
+		IOException consumerFailure = null;
+		try {
+			consumed.join();
+		} catch (CompletionException e) {
+			consumerFailure = e.getCause() instanceof UncheckedIOException uio ? uio.getCause() : new IOException(e.getCause());
+		}
+		if (downloadFailure != null) {
+			if (download == null) Files.deleteIfExists(partFile);
+			throw downloadFailure;
+		}
+		if (consumerFailure != null) {
+			Files.deleteIfExists(partFile);
+			Files.deleteIfExists(stateFile);
+			throw consumerFailure;
+		}
+		Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(stateFile);
+	}
+
+	private static void download(NetworkService network, URI uri, Path outputFile, ProgressReporter reporter) throws IOException {
+		Path partFile = outputFile.resolveSibling(outputFile.getFileName() + ".part");
+		Path stateFile = outputFile.resolveSibling(outputFile.getFileName() + ".part.json");
+		HttpRequest probeRequest = network.request(uri)
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.timeout(Duration.ofSeconds(10))
+				.build();
+		HttpResponse<Void> probeResponse = send(network, probeRequest, HttpResponse.BodyHandlers.discarding());
+		long size = probeResponse.headers().firstValueAsLong("Content-Length").orElse(-1);
+		// Weak validators can't be used with If-Range, so we ignore them.
+		String etag = probeResponse.headers().firstValue("ETag")
+				.filter(tag -> !tag.startsWith("W/"))
+				.orElse(null);
+		boolean rangesSupported = probeResponse.statusCode() == 200 && size > 0 &&
+				probeResponse.headers().allValues("Accept-Ranges").contains("bytes");
+		if (rangesSupported) {
+			PartialDownload download = PartialDownload.load(stateFile);
+			if (download == null || !Files.exists(partFile) || !download.matches(uri.toString(), etag, size)) {
+				int segmentCount = (int) Math.max(1, Math.min(DOWNLOAD_SEGMENTS, size / MIN_DOWNLOAD_SEGMENT_SIZE));
+				download = PartialDownload.create(uri.toString(), etag, size, segmentCount);
+				Files.deleteIfExists(partFile);
+			} else if (download.getBytesDone() > 0) {
+				DOWNLOADS_RESUMED.increment();
+			}
+			// Use the final URI, so we don't follow the same redirects for every segment.
+			downloadSegmented(network, probeResponse.uri(), download, partFile, stateFile, reporter);
+		} else {
+			Files.deleteIfExists(stateFile);
+			HttpRequest request = network.request(uri).GET().timeout(Duration.ofMinutes(5)).build();
+			HttpResponse<InputStream> resp = send(network, request, HttpResponse.BodyHandlers.ofInputStream());
+			if (resp.statusCode() != 200) {
+				resp.body().close();
+				throw new IOException("Download failed: " + resp.statusCode());
+			}
+			downloadWithProgress(partFile, resp, reporter);
+		}
+		Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(stateFile);
+	}
+
+	private static void downloadSegmented(
+			NetworkService network,
+			URI uri,
+			PartialDownload download,
+			Path partFile,
+			Path stateFile,
+			ProgressReporter reporter
+	) throws IOException {
+		long size = download.getSize();
+		AtomicLong bytesDone = new AtomicLong(download.getBytesDone());
+		reporter.setProgressBytes(bytesDone.get(), size);
+		AtomicLong lastStateSave = new AtomicLong(System.currentTimeMillis());
+		int segmentCount = download.getSegmentCount();
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		try (var channel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			List<CompletableFuture<Void>> segmentFutures = new ArrayList<>(segmentCount);
+			for (int i = 0; i < segmentCount; i++) {
+				final int segment = i;
+				long start = download.getSegmentStart(segment) + download.getSegmentBytesDone(segment);
+				long end = download.getSegmentEnd(segment);
+				if (start > end) continue; // This segment is already done.
+				segmentFutures.add(CompletableFuture.runAsync(() -> {
+					try {
+						downloadSegment(network, uri, download.getEtag(), start, end, channel, bytes -> {
+							download.addSegmentBytesDone(segment, bytes);
+							DOWNLOADED_BYTES.add(bytes);
+							reporter.setProgressBytes(bytesDone.addAndGet(bytes), size);
+							long now = System.currentTimeMillis();
+							long last = lastStateSave.get();
+							if (now - last > STATE_SAVE_INTERVAL_MS && lastStateSave.compareAndSet(last, now)) {
+								try {
+									saveState(download, channel, stateFile);
+								} catch (IOException e) {
+									// Not fatal; a later save may work, and at worst a resume starts further back.
+									STATE_SAVE_FAILURES.increment();
+								}
+							}
+						});
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, executor));
+			}
+			try {
+				CompletableFuture.allOf(segmentFutures.toArray(new CompletableFuture<?>[0])).join();
+			} catch (CompletionException e) {
+				IOException failure = e.getCause() instanceof UncheckedIOException uio ? uio.getCause() : new IOException(e.getCause());
+				// Record how far we got, so a later attempt can continue from here.
+				try {
+					saveState(download, channel, stateFile);
+				} catch (IOException saveFailure) {
+					STATE_SAVE_FAILURES.increment();
+					failure.addSuppressed(saveFailure);
+				}
+				throw failure;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void saveState(PartialDownload download, FileChannel channel, Path stateFile) throws IOException {
+		// Make sure the data is on disk before we claim that it's done.
+		channel.force(false);
+		download.save(stateFile);
+	}
+
+	private static void downloadSegment(
+			NetworkService network,
+			URI uri,
+			String etag,
+			long start,
+			long end,
+			FileChannel channel,
+			LongConsumer progressListener
+	) throws IOException {
+		HttpRequest.Builder requestBuilder = network.request(uri)
+				.GET()
+				.header("Range", "bytes=" + start + "-" + end)
+				.timeout(Duration.ofMinutes(5));
+		// If the resource changed since we started, the server will send the whole thing instead of a 206.
+		if (etag != null) requestBuilder.header("If-Range", etag);
+		HttpResponse<InputStream> resp = send(network, requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		try (var in = resp.body()) {
+			if (resp.statusCode() != 206) {
+				throw new IOException("Server didn't honor range request for bytes " + start + "-" + end + ": " + resp.statusCode());
+			}
+			byte[] buffer = new byte[8192];
+			long position = start;
+			int readCount;
+			while (position <= end && (readCount = in.read(buffer)) != -1) {
+				ByteBuffer buf = ByteBuffer.wrap(buffer, 0, (int) Math.min(readCount, end - position + 1));
+				int written = 0;
+				while (buf.hasRemaining()) {
+					written += channel.write(buf, position + written);
+				}
+				position += written;
+				progressListener.accept(written);
+			}
+			if (position != end + 1) {
+				throw new IOException("Incomplete segment: expected bytes " + start + "-" + end + ", got up to " + (position - 1));
+			}
+		}
+	}
+
+	private static <T> HttpResponse<T> send(NetworkService network, HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+		try {
+			return network.send(request, handler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Download was interrupted.");
+		}
+	}
+
 	public static void downloadWithProgress(Path outputFile, HttpResponse<InputStream> resp, ProgressReporter reporter) throws IOException {
-		reporter.setProgress(0);
-		long size = resp.headers().firstValueAsLong("Content-Length").orElse(1);
+		long size = resp.headers().firstValueAsLong("Content-Length").orElse(-1);
+		reporter.setProgressBytes(0, size);
 		try (var out = Files.newOutputStream(outputFile); var in = resp.body()) {
 			byte[] buffer = new byte[8192];
 			long bytesRead = 0;
-			while (bytesRead < size) {
-				int readCount = in.read(buffer);
+			int readCount;
+			while ((readCount = in.read(buffer)) != -1) {
 				out.write(buffer, 0, readCount);
 				bytesRead += readCount;
-				reporter.setProgress((double) bytesRead / size);
+				DOWNLOADED_BYTES.add(readCount);
+				reporter.setProgressBytes(bytesRead, size);
 			}
 		}
 	}
 
+	/**
+	 * An input stream that's fed chunks of a download by the thread that's
+	 * writing it to disk, so that a consumer can read the download at the same
+	 * time. Only a limited number of chunks are queued, so a slow consumer
+	 * slows the download down instead of buffering all of it in memory. Once
+	 * the consumer closes the stream, anything written to it is ignored.
+	 */
+	private static class StreamTee extends InputStream {
+		private static final byte[] END = new byte[0];
+
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(STREAM_TEE_CHUNKS);
+		private volatile boolean closed = false;
+		private volatile IOException failure = null;
+		private byte[] chunk = null;
+		private int position = 0;
+
+		void write(byte[] bytes, int offset, int length) throws InterruptedIOException {
+			put(Arrays.copyOfRange(bytes, offset, offset + length));
+		}
+
+		void finish() throws InterruptedIOException {
+			put(END);
+		}
+
+		void fail(IOException e) {
+			failure = e;
+			// The consumer doesn't need what's still queued, so this always makes room for the end.
+			chunks.clear();
+			chunks.offer(END);
+		}
+
+		private void put(byte[] bytes) throws InterruptedIOException {
+			try {
+				while (!closed && !chunks.offer(bytes, 100, TimeUnit.MILLISECONDS)) {
+					// Keep waiting for the consumer, unless it closed the stream.
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Download was interrupted.");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (chunk == null || position == chunk.length) {
+				if (chunk != END) {
+					try {
+						chunk = chunks.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for the download.");
+					}
+					position = 0;
+				}
+				if (chunk == END) {
+					if (failure != null) throw new IOException("Download failed: " + failure.getMessage(), failure);
+					return -1;
+				}
+			}
+			int count = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			chunks.clear();
+		}
+	}
+
 	public static Image loadImage(String resource) {
 		try (InputStream in = FileUtils.class.getResourceAsStream(resource)) {
 			if (in == null) throw new RuntimeException("Couldn't load image from resource: " + resource);
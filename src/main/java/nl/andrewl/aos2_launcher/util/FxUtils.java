@@ -3,6 +3,7 @@ package nl.andrewl.aos2_launcher.util;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.text.Font;
 import nl.andrewl.aos2_launcher.Launcher;
 
 import java.io.IOException;
@@ -38,6 +39,23 @@ public class FxUtils {
 		return s;
 	}
 
+	/**
+	 * Loads fonts from resources, so that stylesheets can use them by their
+	 * family name. This may be called from any thread.
+	 * @param resources The font resources to load.
+	 */
+	public static void loadFonts(String... resources) {
+		for (var resource : resources) {
+			try (var in = FxUtils.class.getResourceAsStream(resource)) {
+				if (in == null || Font.loadFont(in, 12) == null) {
+					System.err.println("Could not load font at " + resource);
+				}
+			} catch (IOException e) {
+				System.err.println("Could not load font at " + resource + ": " + e.getMessage());
+			}
+		}
+	}
+
 	public static void addStylesheet(Scene scene, String... resources) {
 		for (var resource : resources) {
 			var url = Launcher.class.getResource(resource);
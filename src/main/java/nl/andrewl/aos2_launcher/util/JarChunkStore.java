@@ -0,0 +1,403 @@
+package nl.andrewl.aos2_launcher.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * A content-addressed store for jar files, in which many versions of the
+ * same jar take up little more space than one.
+ * <p>
+ *     Each jar is taken apart into its entries' compressed data, which we
+ *     call chunks. Every chunk is stored once, in a file named after its
+ *     SHA-256 hash, no matter how many jars contain it. A jar itself is
+ *     stored as a small manifest that lists its central directory records
+ *     and the hash of each entry's chunk. Since consecutive client versions
+ *     share most of their classes and assets, storing a new version only
+ *     adds the chunks of the entries that changed.
+ * </p>
+ * <p>
+ *     Jars are rebuilt from the store on demand, without decompressing
+ *     anything, and every chunk is checked against its hash on the way out.
+ *     The rebuilt jar has the same entries with the same contents and the
+ *     same modification time as the original, although it isn't necessarily
+ *     byte-for-byte identical. Rebuilding the same jar always gives the same
+ *     result, though.
+ * </p>
+ * <p>
+ *     Chunks aren't reference-counted. When jars are removed from the store,
+ *     {@link #removeUnusedChunks()} sweeps away every chunk that none of the
+ *     remaining manifests refer to.
+ * </p>
+ * <p>
+ *     The store also records when each jar was last used, in a small
+ *     "usage.json" file, so that callers can decide which jars to keep
+ *     around without relying on file access times.
+ * </p>
+ */
+public class JarChunkStore {
+	private static final String MANIFEST_SUFFIX = ".json";
+
+	private static final Counter CHUNKS_ADDED = Metrics.counter("jar_store_chunks_added_total", "Number of new chunks written to the jar store.");
+	private static final Counter CHUNKS_REMOVED = Metrics.counter("jar_store_chunks_removed_total", "Number of chunks removed from the jar store because no stored jar used them any more.");
+	private static final Counter BYTES_DEDUPLICATED = Metrics.counter("jar_store_bytes_deduplicated_total", "Number of bytes of jar entries that were already in the jar store.");
+
+	private final Path chunksDir;
+	private final Path manifestsDir;
+	private final Path usageFile;
+	/**
+	 * The time at which each jar was last used, in epoch milliseconds, by
+	 * the jar's file name. Loaded when it's first needed.
+	 */
+	private Map<String, Long> lastUsedTimes = null;
+
+	/**
+	 * Creates a store in the given directory, which is created if needed.
+	 * @param dir The directory to keep the store in.
+	 */
+	public JarChunkStore(Path dir) {
+		this.chunksDir = dir.resolve("chunks");
+		this.manifestsDir = dir.resolve("jars");
+		this.usageFile = dir.resolve("usage.json");
+	}
+
+	/**
+	 * Checks if a jar is in the store.
+	 * @param name The jar's file name.
+	 * @return True if the jar can be extracted from the store.
+	 */
+	public synchronized boolean contains(String name) {
+		return Files.isRegularFile(manifestsDir.resolve(name + MANIFEST_SUFFIX));
+	}
+
+	/**
+	 * Gets the file names of all jars in the store.
+	 * @return The sorted list of jar file names.
+	 */
+	public synchronized List<String> getJarNames() {
+		if (!Files.isDirectory(manifestsDir)) return Collections.emptyList();
+		try (var s = Files.list(manifestsDir)) {
+			return s.map(p -> p.getFileName().toString())
+					.filter(name -> name.endsWith(MANIFEST_SUFFIX))
+					.map(name -> name.substring(0, name.length() - MANIFEST_SUFFIX.length()))
+					.sorted()
+					.toList();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Adds a jar to the store, under its file name. Only the chunks that
+	 * aren't in the store yet are written. If a jar with the same name is
+	 * already in the store, it's replaced.
+	 * @param jar The jar file to add.
+	 * @throws IOException If the jar couldn't be read, or uses zip64
+	 * extensions, or the store couldn't be written to.
+	 */
+	public synchronized void add(Path jar) throws IOException {
+		Files.createDirectories(chunksDir);
+		Files.createDirectories(manifestsDir);
+		List<ManifestEntry> manifestEntries = new ArrayList<>();
+		ZipDirectory directory;
+		try (var channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+			directory = ZipDirectory.read(channel);
+			if (directory == null) throw new IOException("Zip64 jars can't be stored: " + jar.getFileName());
+			for (ZipDirectory.Entry entry : directory.entries()) {
+				long dataOffset = ZipDirectory.dataOffset(channel, entry.localHeaderOffset());
+				String hash = hash(channel, dataOffset, entry.compressedSize());
+				Path chunkFile = getChunkFile(hash);
+				if (Files.exists(chunkFile)) {
+					BYTES_DEDUPLICATED.add(entry.compressedSize());
+				} else {
+					writeChunk(channel, dataOffset, entry.compressedSize(), chunkFile);
+				}
+				manifestEntries.add(new ManifestEntry(entry, hash));
+			}
+		}
+		// The manifest is written last, so that a jar is only ever listed once all its chunks are stored.
+		Path manifestFile = manifestsDir.resolve(jar.getFileName() + MANIFEST_SUFFIX);
+		Path tmpFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+		try (var writer = new JsonWriter(Files.newBufferedWriter(tmpFile))) {
+			Base64.Encoder encoder = Base64.getEncoder();
+			writer.beginObject();
+			writer.name("lastModified").value(Files.getLastModifiedTime(jar).toMillis());
+			writer.name("endRecord").value(encoder.encodeToString(directory.endRecord()));
+			writer.name("entries").beginArray();
+			for (ManifestEntry entry : manifestEntries) {
+				writer.beginObject();
+				writer.name("record").value(encoder.encodeToString(entry.entry().record()));
+				writer.name("chunk").value(entry.hash());
+				writer.endObject();
+			}
+			writer.endArray();
+			writer.endObject();
+		}
+		Files.move(tmpFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Rebuilds a jar from the store.
+	 * @param name The jar's file name.
+	 * @param outputFile The file to write the jar to. It's only replaced once
+	 *                   the whole jar has been rebuilt and checked.
+	 * @param reporter A progress reporter to visualize the progress.
+	 * @throws IOException If the jar isn't in the store, or one of its chunks
+	 * is missing or corrupt.
+	 */
+	public synchronized void extract(String name, Path outputFile, ProgressReporter reporter) throws IOException {
+		Manifest manifest = readManifest(name);
+		List<ManifestEntry> manifestEntries = manifest.entries();
+		ZipDirectory directory = new ZipDirectory(manifestEntries.stream().map(ManifestEntry::entry).toList(), -1, manifest.endRecord());
+
+		long totalBytes = 0;
+		for (ManifestEntry entry : manifestEntries) totalBytes += entry.entry().compressedSize();
+		long bytesDone = 0;
+		reporter.setProgressBytes(0, totalBytes);
+		Path partFile = outputFile.resolveSibling(outputFile.getFileName() + ".part");
+		try {
+			List<Long> offsets = new ArrayList<>(manifestEntries.size());
+			try (var out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (ManifestEntry entry : manifestEntries) {
+					offsets.add(out.position());
+					ZipDirectory.writeFully(out, entry.entry().toLocalHeader());
+					copyChunk(entry, out);
+					bytesDone += entry.entry().compressedSize();
+					reporter.setProgressBytes(bytesDone, totalBytes);
+				}
+				long centralDirectoryOffset = out.position();
+				for (int i = 0; i < manifestEntries.size(); i++) {
+					ZipDirectory.writeFully(out, manifestEntries.get(i).entry().toCentralHeader(offsets.get(i)));
+				}
+				ZipDirectory.writeFully(out, directory.endRecordAt(centralDirectoryOffset));
+				out.force(true);
+			}
+			// Keep the original's modification time, so that the JVM accepts class data sharing archives made for it.
+			if (manifest.lastModified() > 0) Files.setLastModifiedTime(partFile, FileTime.fromMillis(manifest.lastModified()));
+			Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(partFile);
+		}
+	}
+
+	/**
+	 * Removes a jar from the store. Its chunks stay until
+	 * {@link #removeUnusedChunks()} is called, since other jars may share them.
+	 * @param name The jar's file name.
+	 * @throws IOException If the jar's manifest couldn't be removed.
+	 */
+	public synchronized void remove(String name) throws IOException {
+		Files.deleteIfExists(manifestsDir.resolve(name + MANIFEST_SUFFIX));
+		if (getLastUsedTimes().remove(name) != null) saveLastUsedTimes();
+	}
+
+	/**
+	 * Deletes all chunks that no jar in the store refers to any more, as well
+	 * as anything left over from an interrupted {@link #add}. If any jar's
+	 * manifest can't be read, nothing is deleted, since we can't know which
+	 * chunks that jar needs.
+	 * @return The number of bytes freed.
+	 * @throws IOException If a manifest couldn't be read, or a chunk couldn't
+	 * be deleted.
+	 */
+	public synchronized long removeUnusedChunks() throws IOException {
+		if (!Files.isDirectory(chunksDir)) return 0;
+		Set<String> usedChunks = new HashSet<>();
+		for (String name : getJarNames()) {
+			for (ManifestEntry entry : readManifest(name).entries()) usedChunks.add(entry.hash());
+		}
+		long bytesFreed = 0;
+		try (var s = Files.walk(chunksDir, 2)) {
+			for (Path file : s.filter(Files::isRegularFile).toList()) {
+				if (usedChunks.contains(file.getFileName().toString())) continue;
+				bytesFreed += Files.size(file);
+				Files.delete(file);
+				CHUNKS_REMOVED.increment();
+			}
+		}
+		return bytesFreed;
+	}
+
+	/**
+	 * Records that a jar was just used.
+	 * @param name The jar's file name. It doesn't need to be in the store yet.
+	 * @throws IOException If the usage file couldn't be written.
+	 */
+	public synchronized void markUsed(String name) throws IOException {
+		getLastUsedTimes().put(name, System.currentTimeMillis());
+		saveLastUsedTimes();
+	}
+
+	/**
+	 * Gets the time at which a jar was last marked as used.
+	 * @param name The jar's file name.
+	 * @return The time, or the epoch if it was never marked as used.
+	 */
+	public synchronized Instant getLastUsed(String name) {
+		return Instant.ofEpochMilli(getLastUsedTimes().getOrDefault(name, 0L));
+	}
+
+	private Map<String, Long> getLastUsedTimes() {
+		if (lastUsedTimes != null) return lastUsedTimes;
+		lastUsedTimes = new HashMap<>();
+		if (Files.isRegularFile(usageFile)) {
+			try (var reader = new JsonReader(Files.newBufferedReader(usageFile))) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					lastUsedTimes.put(reader.nextName(), reader.nextLong());
+				}
+				reader.endObject();
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Ignoring invalid jar usage file " + usageFile + ": " + e.getMessage());
+				lastUsedTimes.clear();
+			}
+		}
+		return lastUsedTimes;
+	}
+
+	private void saveLastUsedTimes() throws IOException {
+		Files.createDirectories(usageFile.getParent());
+		Path tmpFile = usageFile.resolveSibling(usageFile.getFileName() + ".tmp");
+		try (var writer = new JsonWriter(Files.newBufferedWriter(tmpFile))) {
+			writer.beginObject();
+			for (var entry : new TreeMap<>(lastUsedTimes).entrySet()) {
+				writer.name(entry.getKey()).value(entry.getValue());
+			}
+			writer.endObject();
+		}
+		Files.move(tmpFile, usageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Manifest readManifest(String name) throws IOException {
+		Path manifestFile = manifestsDir.resolve(name + MANIFEST_SUFFIX);
+		if (!Files.isRegularFile(manifestFile)) throw new IOException("Jar " + name + " is not in the store.");
+		List<ManifestEntry> manifestEntries = new ArrayList<>();
+		byte[] endRecord = null;
+		long lastModified = -1;
+		try (var reader = new JsonReader(Files.newBufferedReader(manifestFile))) {
+			Base64.Decoder decoder = Base64.getDecoder();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "lastModified" -> lastModified = reader.nextLong();
+					case "endRecord" -> endRecord = decoder.decode(reader.nextString());
+					case "entries" -> JsonUtils.readObjectArray(reader, r -> {
+						byte[] record = null;
+						String hash = null;
+						r.beginObject();
+						while (r.hasNext()) {
+							switch (r.nextName()) {
+								case "record" -> record = decoder.decode(r.nextString());
+								case "chunk" -> hash = r.nextString();
+								default -> r.skipValue();
+							}
+						}
+						r.endObject();
+						if (record == null || !isValidHash(hash)) throw new IOException("Invalid manifest for " + name + ".");
+						manifestEntries.add(new ManifestEntry(new ZipDirectory.Entry(record), hash));
+					});
+					default -> reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			throw new IOException("Invalid manifest for " + name + ".", e);
+		}
+		if (endRecord == null) throw new IOException("Invalid manifest for " + name + ".");
+		return new Manifest(endRecord, lastModified, manifestEntries);
+	}
+
+	/**
+	 * Copies a chunk into a jar that's being rebuilt, checking its hash.
+	 */
+	private void copyChunk(ManifestEntry entry, FileChannel out) throws IOException {
+		Path chunkFile = getChunkFile(entry.hash());
+		MessageDigest digest = newDigest();
+		long size = 0;
+		try (var in = FileChannel.open(chunkFile, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				size += buffer.remaining();
+				digest.update(buffer.duplicate());
+				ZipDirectory.writeFully(out, buffer);
+				buffer.clear();
+			}
+		}
+		if (size != entry.entry().compressedSize() || !HexFormat.of().formatHex(digest.digest()).equals(entry.hash())) {
+			throw new IOException("Stored data for " + entry.entry().name() + " is corrupt.");
+		}
+	}
+
+	private void writeChunk(FileChannel channel, long position, long size, Path chunkFile) throws IOException {
+		Files.createDirectories(chunkFile.getParent());
+		Path tmpFile = chunkFile.resolveSibling(chunkFile.getFileName() + ".tmp");
+		try (var out = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ZipDirectory.transferFully(channel, position, size, out);
+			out.force(true);
+		}
+		Files.move(tmpFile, chunkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		CHUNKS_ADDED.increment();
+	}
+
+	/**
+	 * Gets the file for a chunk. Chunks are spread over subdirectories by the
+	 * first two characters of their hash, to keep directories small.
+	 */
+	private Path getChunkFile(String hash) {
+		return chunksDir.resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	private static String hash(FileChannel channel, long position, long size) throws IOException {
+		MessageDigest digest = newDigest();
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		long done = 0;
+		while (done < size) {
+			buffer.clear().limit((int) Math.min(buffer.capacity(), size - done));
+			int readCount = channel.read(buffer, position + done);
+			if (readCount == -1) throw new IOException("Unexpected end of file.");
+			digest.update(buffer.flip());
+			done += readCount;
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static boolean isValidHash(String hash) {
+		return hash != null && hash.length() == 64 && hash.chars().allMatch(HexFormat::isHexDigit);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A stored jar's manifest.
+	 * @param endRecord The jar's end of central directory record.
+	 * @param lastModified The original jar's modification time in epoch
+	 *                     milliseconds, or -1 if it wasn't recorded.
+	 * @param entries The jar's entries, in order.
+	 */
+	private record Manifest(byte[] endRecord, long lastModified, List<ManifestEntry> entries) {}
+
+	private record ManifestEntry(ZipDirectory.Entry entry, String hash) {}
+}
@@ -0,0 +1,279 @@
+package nl.andrewl.aos2_launcher.util;
+
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Downloads a new version of a jar file by fetching only the entries that
+ * differ from an older version that's already on disk.
+ * <p>
+ *     A jar is a zip file, which ends with a central directory that lists
+ *     every entry's name, CRC-32, sizes and offset. We fetch just that
+ *     directory from the server with a range request, and compare it with
+ *     the directory of the old jar. Entries with the same name, compression
+ *     method, CRC and sizes are copied from the old jar as they are, still
+ *     compressed. Only the remaining entries are downloaded, with as few
+ *     range requests as possible. The new jar is then assembled locally, and
+ *     every entry is checked against the CRC-32 that the server's directory
+ *     lists for it, before it's moved into place.
+ * </p>
+ * <p>
+ *     This only works for servers that support range requests, and for
+ *     regular (non-zip64) archives. When it doesn't apply, or most of the jar
+ *     changed anyway, {@link #tryUpdate} returns false so that the caller can
+ *     download the whole file instead.
+ * </p>
+ */
+public class JarDeltaUpdater {
+	/**
+	 * Changed entries separated by at most this many unchanged bytes are
+	 * downloaded with a single range request.
+	 */
+	private static final long MAX_MERGED_GAP = 64 * 1024;
+	/**
+	 * If more than this fraction of the jar changed, we download it whole.
+	 */
+	private static final double MAX_CHANGED_FRACTION = 0.5;
+
+	private static final Counter DELTA_UPDATES = Metrics.counter("delta_updates_total", "Number of client jars that were updated by downloading only changed entries.");
+	private static final Counter DELTA_BYTES_SAVED = Metrics.counter("delta_bytes_saved_total", "Number of bytes that delta updates didn't need to download.");
+
+	/**
+	 * Tries to create the jar at the given URI locally, from an older jar and
+	 * the entries that changed since.
+	 * @param network The network service to send requests with.
+	 * @param uri The URI of the new jar.
+	 * @param baseJar An older version of the jar, which is on disk.
+	 * @param outputFile The file to write the new jar to.
+	 * @param reporter A progress reporter to visualize the progress.
+	 * @return True if the new jar was written to the output file, or false if
+	 * a delta update isn't possible or worthwhile for this jar.
+	 * @throws IOException If the delta update failed.
+	 */
+	public static boolean tryUpdate(NetworkService network, URI uri, Path baseJar, Path outputFile, ProgressReporter reporter) throws IOException {
+		HttpRequest probeRequest = network.request(uri)
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.build();
+		HttpResponse<Void> probeResponse = send(network, probeRequest, HttpResponse.BodyHandlers.discarding());
+		long size = probeResponse.headers().firstValueAsLong("Content-Length").orElse(-1);
+		if (probeResponse.statusCode() != 200 || size <= 0 || !probeResponse.headers().allValues("Accept-Ranges").contains("bytes")) {
+			return false;
+		}
+		String etag = probeResponse.headers().firstValue("ETag")
+				.filter(tag -> !tag.startsWith("W/"))
+				.orElse(null);
+		RemoteFile remote = new RemoteFile(network, probeResponse.uri(), etag, size);
+
+		ZipDirectory newDirectory = ZipDirectory.read(remote::read, size);
+		if (newDirectory == null) return false;
+		ZipDirectory oldDirectory;
+		try (var baseChannel = FileChannel.open(baseJar, StandardOpenOption.READ)) {
+			oldDirectory = ZipDirectory.read(baseChannel);
+		}
+		if (oldDirectory == null) return false;
+
+		// Work out which of the new jar's entries we already have.
+		Map<String, ZipDirectory.Entry> oldEntries = new HashMap<>();
+		for (ZipDirectory.Entry entry : oldDirectory.entries()) oldEntries.put(entry.name(), entry);
+		List<ZipDirectory.Entry> newEntries = new ArrayList<>(newDirectory.entries());
+		newEntries.sort(Comparator.comparingLong(ZipDirectory.Entry::localHeaderOffset));
+		List<Region> changedRegions = new ArrayList<>();
+		for (int i = 0; i < newEntries.size(); i++) {
+			ZipDirectory.Entry entry = newEntries.get(i);
+			ZipDirectory.Entry oldEntry = oldEntries.get(entry.name());
+			if (oldEntry != null && oldEntry.hasSameContent(entry)) continue;
+			long end = i + 1 < newEntries.size() ? newEntries.get(i + 1).localHeaderOffset() : newDirectory.offset();
+			changedRegions.add(new Region(entry.localHeaderOffset(), end));
+		}
+		List<Region> regions = mergeRegions(changedRegions);
+		long downloadBytes = 0;
+		for (Region region : regions) downloadBytes += region.end() - region.start();
+		if (downloadBytes > size * MAX_CHANGED_FRACTION) return false;
+
+		Path deltaFile = outputFile.resolveSibling(outputFile.getFileName() + ".delta");
+		Path partFile = outputFile.resolveSibling(outputFile.getFileName() + ".part");
+		try (
+				var baseChannel = FileChannel.open(baseJar, StandardOpenOption.READ);
+				var deltaChannel = FileChannel.open(deltaFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+		) {
+			Map<Long, Long> deltaPositions = downloadRegions(remote, regions, deltaChannel, downloadBytes, reporter);
+			reporter.setProgress(-1);
+			assemble(newDirectory, newEntries, oldEntries, baseChannel, deltaChannel, deltaPositions, partFile);
+			verify(partFile, newDirectory);
+			Files.move(partFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(deltaFile);
+			Files.deleteIfExists(partFile);
+		}
+		DELTA_UPDATES.increment();
+		// Besides the changed regions, we only downloaded the central directory.
+		DELTA_BYTES_SAVED.add(newDirectory.offset() - downloadBytes);
+		return true;
+	}
+
+	/**
+	 * Downloads the given regions of the remote file, one after the other,
+	 * into the delta file.
+	 * @return A map from the start of each region in the remote file, to its
+	 * position in the delta file.
+	 */
+	private static Map<Long, Long> downloadRegions(RemoteFile remote, List<Region> regions, FileChannel deltaChannel, long totalBytes, ProgressReporter reporter) throws IOException {
+		Map<Long, Long> positions = new HashMap<>();
+		long bytesDone = 0;
+		reporter.setProgressBytes(0, totalBytes);
+		for (Region region : regions) {
+			long position = deltaChannel.position();
+			try (var in = remote.open(region.start(), region.end() - region.start())) {
+				byte[] buffer = new byte[8192];
+				int readCount;
+				while ((readCount = in.read(buffer)) != -1) {
+					ByteBuffer buf = ByteBuffer.wrap(buffer, 0, readCount);
+					while (buf.hasRemaining()) deltaChannel.write(buf);
+					bytesDone += readCount;
+					reporter.setProgressBytes(bytesDone, totalBytes);
+				}
+			}
+			if (deltaChannel.position() - position != region.end() - region.start()) {
+				throw new IOException("Incomplete range download for bytes " + region.start() + "-" + (region.end() - 1) + ".");
+			}
+			positions.put(region.start(), position);
+		}
+		return positions;
+	}
+
+	private static List<Region> mergeRegions(List<Region> regions) {
+		List<Region> merged = new ArrayList<>();
+		for (Region region : regions) {
+			if (!merged.isEmpty() && region.start() - merged.get(merged.size() - 1).end() <= MAX_MERGED_GAP) {
+				Region last = merged.remove(merged.size() - 1);
+				merged.add(new Region(last.start(), region.end()));
+			} else {
+				merged.add(region);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Writes the new jar, taking each entry's compressed data either from the
+	 * old jar, or from the downloaded regions. Each entry gets a fresh local
+	 * header with its sizes filled in, so no data descriptors are needed.
+	 */
+	private static void assemble(
+			ZipDirectory directory,
+			List<ZipDirectory.Entry> entries,
+			Map<String, ZipDirectory.Entry> oldEntries,
+			FileChannel baseChannel,
+			FileChannel deltaChannel,
+			Map<Long, Long> deltaPositions,
+			Path partFile
+	) throws IOException {
+		// Find where each downloaded entry starts within the delta file.
+		NavigableMap<Long, Long> regionStarts = new TreeMap<>(deltaPositions);
+		Map<ZipDirectory.Entry, Long> newOffsets = new HashMap<>();
+		try (var out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (ZipDirectory.Entry entry : entries) {
+				newOffsets.put(entry, out.position());
+				ZipDirectory.writeFully(out, entry.toLocalHeader());
+				ZipDirectory.Entry oldEntry = oldEntries.get(entry.name());
+				if (oldEntry != null && oldEntry.hasSameContent(entry)) {
+					ZipDirectory.transferFully(baseChannel, ZipDirectory.dataOffset(baseChannel, oldEntry.localHeaderOffset()), entry.compressedSize(), out);
+				} else {
+					var regionStart = regionStarts.floorEntry(entry.localHeaderOffset());
+					long localHeaderPosition = regionStart.getValue() + (entry.localHeaderOffset() - regionStart.getKey());
+					ZipDirectory.transferFully(deltaChannel, ZipDirectory.dataOffset(deltaChannel, localHeaderPosition), entry.compressedSize(), out);
+				}
+			}
+			long centralDirectoryOffset = out.position();
+			for (ZipDirectory.Entry entry : directory.entries()) {
+				ZipDirectory.writeFully(out, entry.toCentralHeader(newOffsets.get(entry)));
+			}
+			ZipDirectory.writeFully(out, directory.endRecordAt(centralDirectoryOffset));
+			out.force(true);
+		}
+	}
+
+	/**
+	 * Checks that the rebuilt jar has exactly the entries listed in the new
+	 * jar's central directory, with the right contents.
+	 */
+	private static void verify(Path file, ZipDirectory directory) throws IOException {
+		try (var zipFile = new ZipFile(file.toFile())) {
+			if (zipFile.size() != directory.entries().size()) {
+				throw new IOException("Rebuilt jar has " + zipFile.size() + " entries instead of " + directory.entries().size() + ".");
+			}
+			byte[] buffer = new byte[8192];
+			for (ZipDirectory.Entry expected : directory.entries()) {
+				ZipEntry entry = zipFile.getEntry(expected.name());
+				if (entry == null) throw new IOException("Rebuilt jar is missing " + expected.name() + ".");
+				CRC32 crc = new CRC32();
+				try (var in = zipFile.getInputStream(entry)) {
+					int readCount;
+					while ((readCount = in.read(buffer)) != -1) crc.update(buffer, 0, readCount);
+				}
+				if (crc.getValue() != expected.crc()) {
+					throw new IOException("Rebuilt jar has a corrupt entry: " + expected.name());
+				}
+			}
+		}
+	}
+
+	private static <T> HttpResponse<T> send(NetworkService network, HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+		try {
+			return network.send(request, handler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Download was interrupted.");
+		}
+	}
+
+	private record Region(long start, long end) {}
+
+	/**
+	 * A file on a server that supports range requests.
+	 */
+	private record RemoteFile(NetworkService network, URI uri, String etag, long size) {
+		InputStream open(long offset, long length) throws IOException {
+			HttpRequest.Builder requestBuilder = network.request(uri)
+					.GET()
+					.header("Range", "bytes=" + offset + "-" + (offset + length - 1))
+					.timeout(Duration.ofMinutes(5));
+			// If the file changed since we read its directory, the server sends all of it instead of a 206.
+			if (etag != null) requestBuilder.header("If-Range", etag);
+			HttpResponse<InputStream> resp = send(network, requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+			if (resp.statusCode() != 206) {
+				resp.body().close();
+				throw new IOException("Server didn't honor range request: " + resp.statusCode());
+			}
+			return resp.body();
+		}
+
+		ByteBuffer read(long offset, int length) throws IOException {
+			try (var in = open(offset, length)) {
+				byte[] data = in.readNBytes(length);
+				if (data.length != length) throw new IOException("Incomplete range download.");
+				return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package nl.andrewl.aos2_launcher.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Helpers for reading JSON with Gson's streaming {@link JsonReader}, so that
+ * large responses can be turned into model objects one at a time, without
+ * building a tree of the whole document first.
+ */
+public class JsonUtils {
+	/**
+	 * An action that reads one element of a JSON array.
+	 */
+	@FunctionalInterface
+	public interface ElementReader {
+		void read(JsonReader reader) throws IOException;
+	}
+
+	/**
+	 * Reads a JSON array, calling the given element reader once for each
+	 * element. Elements which aren't objects are skipped.
+	 * @param reader The reader to read from.
+	 * @param elementReader The action that reads each object in the array.
+	 * @throws IOException If the JSON couldn't be read.
+	 */
+	public static void readObjectArray(JsonReader reader, ElementReader elementReader) throws IOException {
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+				elementReader.read(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endArray();
+	}
+
+	/**
+	 * Reads the next value as a string, or null if it's a JSON null.
+	 * @param reader The reader to read from.
+	 * @return The string value, or null.
+	 * @throws IOException If the JSON couldn't be read.
+	 */
+	public static String nextStringOrNull(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+}
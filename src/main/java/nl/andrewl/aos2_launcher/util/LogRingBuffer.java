@@ -0,0 +1,70 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed-size buffer that keeps only the most recent bytes written to it,
+ * like the last part of a process' output. Writing never blocks or grows
+ * the buffer; the oldest bytes are simply overwritten.
+ */
+public class LogRingBuffer {
+	private final byte[] buffer;
+	private int end = 0;
+	private boolean wrapped = false;
+
+	/**
+	 * Creates a ring buffer.
+	 * @param capacity The maximum number of bytes to keep.
+	 */
+	public LogRingBuffer(int capacity) {
+		this.buffer = new byte[capacity];
+	}
+
+	public synchronized void write(byte[] bytes, int offset, int length) {
+		if (length >= buffer.length) {
+			// Only the last part of a large write fits.
+			System.arraycopy(bytes, offset + length - buffer.length, buffer, 0, buffer.length);
+			end = 0;
+			wrapped = true;
+			return;
+		}
+		int firstPart = Math.min(length, buffer.length - end);
+		System.arraycopy(bytes, offset, buffer, end, firstPart);
+		System.arraycopy(bytes, offset + firstPart, buffer, 0, length - firstPart);
+		if (end + length >= buffer.length) wrapped = true;
+		end = (end + length) % buffer.length;
+	}
+
+	/**
+	 * Gets the buffer's contents, oldest first.
+	 * @return A copy of the contents.
+	 */
+	public synchronized byte[] getBytes() {
+		if (!wrapped) return Arrays.copyOf(buffer, end);
+		byte[] bytes = new byte[buffer.length];
+		System.arraycopy(buffer, end, bytes, 0, buffer.length - end);
+		System.arraycopy(buffer, 0, bytes, buffer.length - end, end);
+		return bytes;
+	}
+
+	/**
+	 * Gets the last lines in the buffer. If older output was overwritten, the
+	 * first, partial line is left out.
+	 * @param maxLines The maximum number of lines to get.
+	 * @return The lines, oldest first.
+	 */
+	public List<String> getLastLines(int maxLines) {
+		boolean partialFirstLine;
+		synchronized (this) {
+			partialFirstLine = wrapped;
+		}
+		String text = new String(getBytes(), StandardCharsets.UTF_8);
+		List<String> lines = new ArrayList<>(Arrays.asList(text.split("\\r?\\n")));
+		if (partialFirstLine && !lines.isEmpty()) lines.remove(0);
+		lines.removeIf(String::isBlank);
+		return lines.subList(Math.max(0, lines.size() - maxLines), lines.size());
+	}
+}
@@ -0,0 +1,286 @@
+package nl.andrewl.aos2_launcher.util;
+
+import nl.andrewl.aos2_launcher.metrics.Counter;
+import nl.andrewl.aos2_launcher.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The launcher's single point of access to the network. It owns one shared
+ * {@link HttpClient}, so that connections (and TLS sessions) are reused by
+ * every request to the same host, like GitHub's API and asset requests.
+ * <p>
+ *     On top of the client, it adds a few things that the client doesn't do
+ *     on its own: requests that fail with a connection error or a transient
+ *     server error are retried with exponential backoff, and the number of
+ *     concurrent requests to any one host is limited. A request counts
+ *     against its host's limit until its response body has been fully read,
+ *     or closed.
+ * </p>
+ * <p>
+ *     Only idempotent requests, like GET and HEAD, should be sent through
+ *     this service, since they may be sent more than once.
+ * </p>
+ */
+public class NetworkService {
+	public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+	private static final int WORKER_THREADS = 4;
+	private static final int MAX_REQUESTS_PER_HOST = 6;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long INITIAL_BACKOFF_MS = 500;
+	private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 502, 503, 504);
+
+	private static final Counter REQUESTS = Metrics.counter("http_requests_total", "Number of HTTP requests sent, including retries.");
+	private static final Counter RETRIES = Metrics.counter("http_retries_total", "Number of HTTP requests that were retried.");
+
+	public static final NetworkService INSTANCE = new NetworkService();
+
+	private final HttpClient httpClient;
+	private final ExecutorService executor;
+	private final Map<String, HostLimiter> hostLimiters = new ConcurrentHashMap<>();
+
+	public NetworkService() {
+		AtomicInteger threadCount = new AtomicInteger(0);
+		executor = Executors.newFixedThreadPool(WORKER_THREADS, r -> {
+			Thread t = new Thread(r, "network-worker-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		httpClient = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(CONNECT_TIMEOUT)
+				.executor(executor)
+				.build();
+	}
+
+	/**
+	 * Creates a request builder with the shared default timeout.
+	 * @param uri The URI to request.
+	 * @return The request builder.
+	 */
+	public HttpRequest.Builder request(URI uri) {
+		return HttpRequest.newBuilder(uri).timeout(DEFAULT_REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * Sends a request, blocking until the response headers are received.
+	 * @param request The request to send.
+	 * @param handler The response body handler.
+	 * @return The response.
+	 * @param <T> The response body type.
+	 * @throws IOException If the request failed, even after retrying.
+	 * @throws InterruptedException If the thread was interrupted.
+	 */
+	public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+		HostLimiter limiter = getLimiter(request.uri());
+		for (int attempt = 1;; attempt++) {
+			Permit permit;
+			try {
+				permit = limiter.acquire().get();
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			}
+			HttpResponse<T> response;
+			try {
+				REQUESTS.increment();
+				response = httpClient.send(request, releasingHandler(handler, permit));
+			} catch (IOException e) {
+				permit.release();
+				if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) throw e;
+				Thread.sleep(backoffMillis(attempt));
+				RETRIES.increment();
+				continue;
+			} catch (InterruptedException | RuntimeException e) {
+				permit.release();
+				throw e;
+			}
+			if (attempt >= MAX_ATTEMPTS || !RETRYABLE_STATUSES.contains(response.statusCode())) return response;
+			discard(response);
+			Thread.sleep(backoffMillis(attempt));
+			RETRIES.increment();
+		}
+	}
+
+	/**
+	 * Sends a request asynchronously.
+	 * @param request The request to send.
+	 * @param handler The response body handler.
+	 * @return A future that completes with the response.
+	 * @param <T> The response body type.
+	 */
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+		return sendAsync(request, handler, getLimiter(request.uri()), 1);
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, HostLimiter limiter, int attempt) {
+		return limiter.acquire().thenCompose(permit -> {
+			REQUESTS.increment();
+			return httpClient.sendAsync(request, releasingHandler(handler, permit))
+					.whenComplete((response, throwable) -> {
+						if (throwable != null) permit.release();
+					});
+		}).handle((response, throwable) -> {
+			if (throwable instanceof CompletionException && throwable.getCause() != null) throwable = throwable.getCause();
+			boolean retry = attempt < MAX_ATTEMPTS && (throwable != null
+					? isRetryable(throwable)
+					: RETRYABLE_STATUSES.contains(response.statusCode()));
+			if (!retry) {
+				return throwable == null ? CompletableFuture.completedFuture(response) : CompletableFuture.<HttpResponse<T>>failedFuture(throwable);
+			}
+			if (response != null) discard(response);
+			RETRIES.increment();
+			Executor delayed = CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS, executor);
+			return CompletableFuture.supplyAsync(() -> null, delayed)
+					.thenCompose(v -> sendAsync(request, handler, limiter, attempt + 1));
+		}).thenCompose(f -> f);
+	}
+
+	private HostLimiter getLimiter(URI uri) {
+		String key = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+		return hostLimiters.computeIfAbsent(key, k -> new HostLimiter(MAX_REQUESTS_PER_HOST, executor));
+	}
+
+	private static boolean isRetryable(Throwable throwable) {
+		return throwable instanceof IOException && !(throwable instanceof HttpTimeoutException);
+	}
+
+	private static long backoffMillis(int attempt) {
+		long backoff = INITIAL_BACKOFF_MS << (attempt - 1);
+		// Add some jitter, so that retries of concurrent requests are spread out.
+		return backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+	}
+
+	/**
+	 * Discards the body of a response that we won't use, so its connection
+	 * and host permit are released.
+	 */
+	private static void discard(HttpResponse<?> response) {
+		if (response.body() instanceof Closeable closeable) {
+			try {
+				closeable.close();
+			} catch (IOException ignored) {}
+		}
+	}
+
+	/**
+	 * Wraps a body handler so that the given permit is released once the
+	 * body has been completely received, has failed, or was cancelled, like
+	 * when a response input stream is closed early.
+	 */
+	private static <T> HttpResponse.BodyHandler<T> releasingHandler(HttpResponse.BodyHandler<T> handler, Permit permit) {
+		return responseInfo -> new ReleasingSubscriber<>(handler.apply(responseInfo), permit);
+	}
+
+	private record ReleasingSubscriber<T>(HttpResponse.BodySubscriber<T> delegate, Permit permit) implements HttpResponse.BodySubscriber<T> {
+		@Override
+		public CompletionStage<T> getBody() {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			delegate.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+					subscription.request(n);
+				}
+
+				@Override
+				public void cancel() {
+					permit.release();
+					subscription.cancel();
+				}
+			});
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			delegate.onNext(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			permit.release();
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			permit.release();
+			delegate.onComplete();
+		}
+	}
+
+	/**
+	 * Permission to have one request in flight to a host. Releasing it more
+	 * than once has no effect.
+	 */
+	private static class Permit {
+		private final HostLimiter limiter;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		Permit(HostLimiter limiter) {
+			this.limiter = limiter;
+		}
+
+		void release() {
+			if (released.compareAndSet(false, true)) limiter.release();
+		}
+	}
+
+	/**
+	 * Limits the number of concurrent requests to a single host. Requests
+	 * over the limit wait in line without blocking a thread.
+	 */
+	private static class HostLimiter {
+		private final Executor executor;
+		private final Deque<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+		private int available;
+
+		HostLimiter(int maxConcurrent, Executor executor) {
+			this.available = maxConcurrent;
+			this.executor = executor;
+		}
+
+		synchronized CompletableFuture<Permit> acquire() {
+			if (available > 0) {
+				available--;
+				return CompletableFuture.completedFuture(new Permit(this));
+			}
+			CompletableFuture<Permit> future = new CompletableFuture<>();
+			waiting.addLast(future);
+			return future;
+		}
+
+		void release() {
+			CompletableFuture<Permit> next;
+			synchronized (this) {
+				next = waiting.pollFirst();
+				if (next == null) {
+					available++;
+					return;
+				}
+			}
+			// Hand the permit over on another thread, since we may be on the client's selector thread.
+			executor.execute(() -> next.complete(new Permit(this)));
+		}
+	}
+}
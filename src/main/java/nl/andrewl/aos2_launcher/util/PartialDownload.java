@@ -0,0 +1,153 @@
+package nl.andrewl.aos2_launcher.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The sidecar state of an unfinished download, which is stored next to its
+ * ".part" file so that the download can be continued later with range
+ * requests instead of starting from zero.
+ */
+class PartialDownload {
+	private static final Gson GSON = new Gson();
+
+	private final String url;
+	private final String etag;
+	private final long size;
+	private final long[] segmentStarts;
+	private final long[] segmentEnds;
+	private final AtomicLongArray segmentBytesDone;
+
+	PartialDownload(String url, String etag, long size, long[] segmentStarts, long[] segmentEnds, long[] segmentBytesDone) {
+		this.url = url;
+		this.etag = etag;
+		this.size = size;
+		this.segmentStarts = segmentStarts;
+		this.segmentEnds = segmentEnds;
+		this.segmentBytesDone = new AtomicLongArray(segmentBytesDone);
+	}
+
+	/**
+	 * Creates a new, empty partial download whose bytes are evenly split into
+	 * the given number of segments.
+	 */
+	static PartialDownload create(String url, String etag, long size, int segmentCount) {
+		long segmentSize = size / segmentCount;
+		long[] starts = new long[segmentCount];
+		long[] ends = new long[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			starts[i] = i * segmentSize;
+			ends[i] = i == segmentCount - 1 ? size - 1 : starts[i] + segmentSize - 1;
+		}
+		return new PartialDownload(url, etag, size, starts, ends, new long[segmentCount]);
+	}
+
+	/**
+	 * Reads a partial download's state from a sidecar file.
+	 * @param file The sidecar file to read.
+	 * @return The partial download, or null if the file doesn't exist or is
+	 * not valid.
+	 */
+	static PartialDownload load(Path file) {
+		if (!Files.exists(file)) return null;
+		try (var reader = Files.newBufferedReader(file)) {
+			JsonObject obj = GSON.fromJson(reader, JsonObject.class);
+			JsonElement etagElement = obj.get("etag");
+			String etag = (etagElement == null || etagElement.isJsonNull()) ? null : etagElement.getAsString();
+			JsonArray segmentsArray = obj.getAsJsonArray("segments");
+			int count = segmentsArray.size();
+			long[] starts = new long[count];
+			long[] ends = new long[count];
+			long[] done = new long[count];
+			for (int i = 0; i < count; i++) {
+				JsonObject segmentObj = segmentsArray.get(i).getAsJsonObject();
+				starts[i] = segmentObj.get("start").getAsLong();
+				ends[i] = segmentObj.get("end").getAsLong();
+				done[i] = segmentObj.get("done").getAsLong();
+			}
+			return new PartialDownload(obj.get("url").getAsString(), etag, obj.get("size").getAsLong(), starts, ends, done);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Ignoring invalid partial download state in " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes this download's state to a sidecar file. The state is first
+	 * written to a temporary file and then moved into place, so a crash while
+	 * saving never leaves a corrupt sidecar behind.
+	 * @param file The sidecar file to write.
+	 * @throws IOException If the file couldn't be written.
+	 */
+	synchronized void save(Path file) throws IOException {
+		JsonObject obj = new JsonObject();
+		obj.addProperty("url", url);
+		obj.addProperty("etag", etag);
+		obj.addProperty("size", size);
+		JsonArray segmentsArray = new JsonArray(segmentStarts.length);
+		for (int i = 0; i < segmentStarts.length; i++) {
+			JsonObject segmentObj = new JsonObject();
+			segmentObj.addProperty("start", segmentStarts[i]);
+			segmentObj.addProperty("end", segmentEnds[i]);
+			segmentObj.addProperty("done", segmentBytesDone.get(i));
+			segmentsArray.add(segmentObj);
+		}
+		obj.add("segments", segmentsArray);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.writeString(tmp, GSON.toJson(obj));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Checks if this partial download can be continued for a resource with
+	 * the given properties. We only resume if the server gave us a strong
+	 * validator, since otherwise we can't know if the content has changed.
+	 */
+	boolean matches(String url, String etag, long size) {
+		return this.url.equals(url) &&
+				this.etag != null && this.etag.equals(etag) &&
+				this.size == size;
+	}
+
+	String getEtag() {
+		return etag;
+	}
+
+	long getSize() {
+		return size;
+	}
+
+	int getSegmentCount() {
+		return segmentStarts.length;
+	}
+
+	long getSegmentStart(int segment) {
+		return segmentStarts[segment];
+	}
+
+	long getSegmentEnd(int segment) {
+		return segmentEnds[segment];
+	}
+
+	long getSegmentBytesDone(int segment) {
+		return segmentBytesDone.get(segment);
+	}
+
+	void addSegmentBytesDone(int segment, long bytes) {
+		segmentBytesDone.addAndGet(segment, bytes);
+	}
+
+	long getBytesDone() {
+		long total = 0;
+		for (int i = 0; i < segmentBytesDone.length(); i++) total += segmentBytesDone.get(i);
+		return total;
+	}
+}
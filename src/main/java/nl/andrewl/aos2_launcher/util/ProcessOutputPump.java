@@ -0,0 +1,148 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads the output of any number of processes with a small, fixed number of
+ * threads. Each stream is only read when it has data available, so a read
+ * never blocks; a pump thread just goes over its streams, and sleeps for a
+ * moment when none of them had anything to read. Pump threads wait without
+ * polling while they have no streams at all.
+ * <p>
+ *     Output is always read as soon as possible and handed to a sink, so
+ *     that a process never blocks on a full pipe because nobody's reading
+ *     it. Sinks should therefore be quick, like writing to a buffer or a
+ *     queue, and never wait for the disk.
+ * </p>
+ */
+public class ProcessOutputPump {
+	private static final long MAX_IDLE_SLEEP_MS = 20;
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Receives the output read from a stream. Calls for one stream are never
+	 * concurrent.
+	 */
+	public interface Sink {
+		void write(byte[] bytes, int offset, int length);
+	}
+
+	private final PumpThread[] threads;
+	private int nextThread = 0;
+
+	/**
+	 * Creates an output pump. Its threads are started right away.
+	 * @param threadCount The number of pump threads.
+	 */
+	public ProcessOutputPump(int threadCount) {
+		threads = new PumpThread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new PumpThread("process-output-pump-" + (i + 1));
+			threads[i].start();
+		}
+	}
+
+	/**
+	 * Starts pumping a process' output stream.
+	 * @param in The stream to read, like {@link Process#getInputStream()}.
+	 * @param finished Tells whether the process has exited, so that no more
+	 *                 output will arrive once the stream is empty.
+	 * @param sink The sink to hand all output to.
+	 * @return A future that completes once all output was read, and the
+	 * stream was closed.
+	 */
+	public CompletableFuture<Void> pump(InputStream in, BooleanSupplier finished, Sink sink) {
+		Source source = new Source(in, finished, sink, new CompletableFuture<>());
+		PumpThread thread;
+		synchronized (this) {
+			thread = threads[nextThread];
+			nextThread = (nextThread + 1) % threads.length;
+		}
+		thread.add(source);
+		return source.done();
+	}
+
+	private record Source(InputStream in, BooleanSupplier finished, Sink sink, CompletableFuture<Void> done) {
+		/**
+		 * Reads up to one buffer of what's available right now, so that one
+		 * busy stream can't hold up the others on the same thread.
+		 * @return True if anything was read.
+		 */
+		boolean read(byte[] buffer) {
+			try {
+				int available = in.available();
+				if (available > 0) {
+					int readCount = in.read(buffer, 0, Math.min(available, buffer.length));
+					if (readCount > 0) {
+						sink.write(buffer, 0, readCount);
+						return true;
+					}
+				}
+				// Everything a process writes is in the pipe by the time it exits, so once it's empty, we're done.
+				if (finished.getAsBoolean() && in.available() == 0) close(null);
+			} catch (IOException | RuntimeException e) {
+				close(e);
+			}
+			return false;
+		}
+
+		void close(Throwable throwable) {
+			try {
+				in.close();
+			} catch (IOException ignored) {}
+			if (throwable == null) {
+				done.complete(null);
+			} else {
+				done.completeExceptionally(throwable);
+			}
+		}
+	}
+
+	private static class PumpThread extends Thread {
+		private final List<Source> sources = new ArrayList<>();
+		private final List<Source> newSources = new ArrayList<>();
+
+		PumpThread(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		synchronized void add(Source source) {
+			newSources.add(source);
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long idleSleepMs = 1;
+			try {
+				while (true) {
+					synchronized (this) {
+						while (sources.isEmpty() && newSources.isEmpty()) wait();
+						sources.addAll(newSources);
+						newSources.clear();
+					}
+					boolean readAny = false;
+					for (Source source : sources) {
+						if (source.read(buffer)) readAny = true;
+					}
+					sources.removeIf(source -> source.done().isDone());
+					if (readAny) {
+						idleSleepMs = 1;
+					} else {
+						Thread.sleep(idleSleepMs);
+						idleSleepMs = Math.min(MAX_IDLE_SLEEP_MS, idleSleepMs * 2);
+					}
+				}
+			} catch (InterruptedException e) {
+				for (Source source : sources) source.close(e);
+			}
+		}
+	}
+}
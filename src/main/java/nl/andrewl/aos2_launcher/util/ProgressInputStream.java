@@ -0,0 +1,51 @@
+package nl.andrewl.aos2_launcher.util;
+
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that reports how much of a stream of known size has been
+ * read, for when the bytes are consumed by something other than a plain
+ * download, like an archive extractor.
+ */
+public class ProgressInputStream extends FilterInputStream {
+	private final long size;
+	private final ProgressReporter reporter;
+	private long bytesRead = 0;
+
+	public ProgressInputStream(InputStream in, long size, ProgressReporter reporter) {
+		super(in);
+		this.size = size;
+		this.reporter = reporter;
+		reporter.setProgressBytes(0, size);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) update(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int readCount = super.read(b, off, len);
+		if (readCount > 0) update(readCount);
+		return readCount;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if (skipped > 0) update(skipped);
+		return skipped;
+	}
+
+	private void update(long count) {
+		bytesRead += count;
+		reporter.setProgressBytes(bytesRead, size);
+	}
+}
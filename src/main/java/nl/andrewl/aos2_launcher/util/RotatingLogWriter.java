@@ -0,0 +1,86 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a log file that's rotated once it reaches a certain size: the
+ * current file "game.log" is renamed to "game.log.1", which is renamed to
+ * "game.log.2", and so on, and the oldest file is removed. This keeps the
+ * disk space used by a chatty process bounded. Writes are buffered, so call
+ * {@link #flush()} to get them onto disk.
+ */
+public class RotatingLogWriter implements AutoCloseable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path file;
+	private final long maxFileSize;
+	private final int maxOldFiles;
+	private OutputStream out;
+	private long size;
+
+	/**
+	 * Opens a log writer, appending to the log file if it exists.
+	 * @param file The log file.
+	 * @param maxFileSize The size at which the log file is rotated.
+	 * @param maxOldFiles The number of rotated files to keep.
+	 * @throws IOException If the log file couldn't be opened.
+	 */
+	public RotatingLogWriter(Path file, long maxFileSize, int maxOldFiles) throws IOException {
+		this.file = file;
+		this.maxFileSize = maxFileSize;
+		this.maxOldFiles = maxOldFiles;
+		Files.createDirectories(file.getParent());
+		open();
+	}
+
+	public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+		if (out == null) throw new IOException("Log is closed.");
+		if (size > 0 && size + length > maxFileSize) rotate();
+		out.write(bytes, offset, length);
+		size += length;
+	}
+
+	public synchronized void flush() throws IOException {
+		if (out != null) out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private void open() throws IOException {
+		out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), BUFFER_SIZE);
+		size = Files.size(file);
+	}
+
+	private void rotate() throws IOException {
+		out.close();
+		Files.deleteIfExists(rotatedFile(maxOldFiles));
+		for (int i = maxOldFiles - 1; i >= 1; i--) {
+			Path rotated = rotatedFile(i);
+			if (Files.exists(rotated)) {
+				Files.move(rotated, rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if (maxOldFiles > 0) {
+			Files.move(file, rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(file);
+		}
+		open();
+	}
+
+	private Path rotatedFile(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+}
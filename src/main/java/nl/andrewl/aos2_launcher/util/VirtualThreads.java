@@ -0,0 +1,23 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The executor for asynchronous work that blocks, like writing files,
+ * reading response bodies, or waiting for a process. Each task gets its own
+ * virtual thread, so blocking work never ties up the shared
+ * {@link java.util.concurrent.ForkJoinPool#commonPool() common pool}, which
+ * {@link java.util.concurrent.CompletableFuture}'s default async methods
+ * run on, and which only has as many threads as there are CPU cores.
+ */
+public class VirtualThreads {
+	private static final ExecutorService EXECUTOR = Executors.newThreadPerTaskExecutor(
+			Thread.ofVirtual().name("launcher-io-", 0).factory()
+	);
+
+	public static Executor executor() {
+		return EXECUTOR;
+	}
+}
@@ -0,0 +1,135 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes snapshots of some state in the background, combining bursts of
+ * changes into a single write once no new snapshot has been submitted for a
+ * short quiet period. Only the latest snapshot is ever written. Any pending
+ * snapshot is written when the writer is closed, or when the JVM shuts down.
+ * <p>
+ *     All writers share a single background thread, so that creating many
+ *     of them is cheap, and no two writes ever happen at the same time.
+ * </p>
+ * @param <T> The type of snapshot to write.
+ */
+public class WriteBehindWriter<T> implements AutoCloseable {
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "write-behind-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * An action that writes a snapshot.
+	 */
+	@FunctionalInterface
+	public interface SnapshotWriter<T> {
+		void write(T snapshot) throws IOException;
+	}
+
+	private final long quietPeriodMillis;
+	private final SnapshotWriter<T> writer;
+	private final AtomicReference<T> pendingSnapshot = new AtomicReference<>(null);
+	private final Thread shutdownHook;
+	private ScheduledFuture<?> scheduledWrite = null;
+	private boolean closed = false;
+
+	public WriteBehindWriter(String name, Duration quietPeriod, SnapshotWriter<T> writer) {
+		this.quietPeriodMillis = quietPeriod.toMillis();
+		this.writer = writer;
+		this.shutdownHook = new Thread(this::flush, name + "-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	/**
+	 * Submits a new snapshot to be written once things have been quiet for a
+	 * while. This replaces any snapshot that hasn't been written yet.
+	 * @param snapshot The snapshot to write.
+	 */
+	public synchronized void submit(T snapshot) {
+		if (closed) throw new IllegalStateException("Writer is closed.");
+		pendingSnapshot.set(snapshot);
+		if (scheduledWrite != null) scheduledWrite.cancel(false);
+		scheduledWrite = EXECUTOR.schedule(this::writePending, quietPeriodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes any pending snapshot right away, and waits for it to finish.
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (scheduledWrite != null) scheduledWrite.cancel(false);
+			scheduledWrite = null;
+		}
+		try {
+			// Write on the shared thread, so we never write concurrently with a scheduled write.
+			EXECUTOR.submit(this::writePending).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes a snapshot right away, replacing any pending one, and waits for
+	 * it to finish. Like every other write, it happens on the shared thread,
+	 * so it never overlaps with a background write.
+	 * @param snapshot The snapshot to write.
+	 * @throws IOException If the snapshot couldn't be written.
+	 */
+	public void writeNow(T snapshot) throws IOException {
+		synchronized (this) {
+			if (scheduledWrite != null) scheduledWrite.cancel(false);
+			scheduledWrite = null;
+			pendingSnapshot.set(null);
+		}
+		try {
+			EXECUTOR.submit(() -> {
+				writer.write(snapshot);
+				return null;
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing a snapshot.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException ioe) throw ioe;
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes any pending snapshot, and stops writing on JVM shutdown. No more
+	 * snapshots can be submitted afterwards.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+		}
+		flush();
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException ignored) {
+			// We're already shutting down, and the hook has run or will run, which is harmless.
+		}
+	}
+
+	private void writePending() {
+		T snapshot = pendingSnapshot.getAndSet(null);
+		if (snapshot == null) return;
+		try {
+			writer.write(snapshot);
+		} catch (IOException e) {
+			System.err.println("Failed to write snapshot: " + e.getMessage());
+			// Put it back, unless something newer has been submitted already, so a later flush can retry.
+			pendingSnapshot.compareAndSet(null, snapshot);
+		}
+	}
+}
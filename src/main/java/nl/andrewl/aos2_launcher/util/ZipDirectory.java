@@ -0,0 +1,214 @@
+package nl.andrewl.aos2_launcher.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A zip file's central directory, which lists every entry's name, CRC-32,
+ * sizes and offset. This is all we need to take a jar apart into its
+ * entries' compressed data, and to put it back together again, without ever
+ * decompressing anything.
+ * @param entries The entries, in directory order.
+ * @param offset The offset of the directory in the file.
+ * @param endRecord The raw bytes of the end of central directory record,
+ *                  including the archive comment.
+ */
+record ZipDirectory(List<Entry> entries, long offset, byte[] endRecord) {
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	static final int MAX_END_OF_CENTRAL_DIRECTORY_SEARCH = END_OF_CENTRAL_DIRECTORY_SIZE + 0xFFFF;
+	static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+	static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+	@FunctionalInterface
+	interface RangeReader {
+		ByteBuffer read(long offset, int length) throws IOException;
+	}
+
+	/**
+	 * Reads a zip file's central directory.
+	 * @param reader Reads ranges of bytes from the zip file.
+	 * @param size The size of the zip file.
+	 * @return The directory, or null if the file uses zip64 extensions.
+	 * @throws IOException If the file isn't a valid zip file.
+	 */
+	static ZipDirectory read(RangeReader reader, long size) throws IOException {
+		int tailLength = (int) Math.min(size, MAX_END_OF_CENTRAL_DIRECTORY_SEARCH);
+		long tailOffset = size - tailLength;
+		ByteBuffer tail = reader.read(tailOffset, tailLength);
+		int endPosition = -1;
+		for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+					i + END_OF_CENTRAL_DIRECTORY_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) == tailLength) {
+				endPosition = i;
+				break;
+			}
+		}
+		if (endPosition == -1) throw new IOException("Not a zip file.");
+		int entryCount = Short.toUnsignedInt(tail.getShort(endPosition + 10));
+		long directorySize = Integer.toUnsignedLong(tail.getInt(endPosition + 12));
+		long directoryOffset = Integer.toUnsignedLong(tail.getInt(endPosition + 16));
+		if (entryCount == 0xFFFF || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) return null;
+		byte[] endRecord = new byte[tailLength - endPosition];
+		tail.get(endPosition, endRecord);
+
+		ByteBuffer directory;
+		if (directoryOffset >= tailOffset) {
+			directory = tail.slice((int) (directoryOffset - tailOffset), (int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+		} else {
+			directory = reader.read(directoryOffset, (int) directorySize);
+		}
+		List<Entry> entries = new ArrayList<>(entryCount);
+		int position = 0;
+		for (int i = 0; i < entryCount; i++) {
+			if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) throw new IOException("Invalid central directory.");
+			int recordLength = CENTRAL_HEADER_SIZE
+					+ Short.toUnsignedInt(directory.getShort(position + 28))
+					+ Short.toUnsignedInt(directory.getShort(position + 30))
+					+ Short.toUnsignedInt(directory.getShort(position + 32));
+			byte[] record = new byte[recordLength];
+			directory.get(position, record);
+			Entry entry = new Entry(record);
+			if (entry.compressedSize() == ZIP64_MARKER || entry.size() == ZIP64_MARKER || entry.localHeaderOffset() == ZIP64_MARKER) {
+				return null;
+			}
+			entries.add(entry);
+			position += recordLength;
+		}
+		return new ZipDirectory(entries, directoryOffset, endRecord);
+	}
+
+	/**
+	 * Reads the central directory of a local zip file.
+	 * @param channel The zip file's channel.
+	 * @return The directory, or null if the file uses zip64 extensions.
+	 * @throws IOException If the file isn't a valid zip file.
+	 */
+	static ZipDirectory read(FileChannel channel) throws IOException {
+		return read((offset, length) -> readFully(channel, offset, length), channel.size());
+	}
+
+	/**
+	 * Gets the end of central directory record for a copy of this zip file
+	 * whose central directory starts at the given offset.
+	 */
+	ByteBuffer endRecordAt(long centralDirectoryOffset) throws IOException {
+		if (centralDirectoryOffset >= ZIP64_MARKER) throw new IOException("Rebuilt jar is too large.");
+		ByteBuffer end = ByteBuffer.wrap(endRecord.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(16, (int) centralDirectoryOffset);
+		return end;
+	}
+
+	/**
+	 * Finds where an entry's compressed data starts, given the offset of its
+	 * local header.
+	 */
+	static long dataOffset(FileChannel channel, long localHeaderOffset) throws IOException {
+		ByteBuffer header = readFully(channel, localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+			throw new IOException("Invalid local file header at offset " + localHeaderOffset + ".");
+		}
+		return localHeaderOffset + LOCAL_HEADER_SIZE + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+	}
+
+	static ByteBuffer readFully(FileChannel channel, long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) == -1) throw new IOException("Unexpected end of file.");
+		}
+		return buffer.flip();
+	}
+
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+
+	static void transferFully(FileChannel source, long position, long count, FileChannel target) throws IOException {
+		long transferred = 0;
+		while (transferred < count) {
+			long n = source.transferTo(position + transferred, count - transferred, target);
+			if (n <= 0) throw new IOException("Unexpected end of file.");
+			transferred += n;
+		}
+	}
+
+	/**
+	 * A central directory record, which describes one entry of a zip file.
+	 * @param record The raw bytes of the record.
+	 */
+	record Entry(byte[] record) {
+		private ByteBuffer buffer() {
+			return ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		int flags() {
+			return Short.toUnsignedInt(buffer().getShort(8));
+		}
+
+		int method() {
+			return Short.toUnsignedInt(buffer().getShort(10));
+		}
+
+		long crc() {
+			return Integer.toUnsignedLong(buffer().getInt(16));
+		}
+
+		long compressedSize() {
+			return Integer.toUnsignedLong(buffer().getInt(20));
+		}
+
+		long size() {
+			return Integer.toUnsignedLong(buffer().getInt(24));
+		}
+
+		int nameLength() {
+			return Short.toUnsignedInt(buffer().getShort(28));
+		}
+
+		long localHeaderOffset() {
+			return Integer.toUnsignedLong(buffer().getInt(42));
+		}
+
+		String name() {
+			return new String(record, CENTRAL_HEADER_SIZE, nameLength(), StandardCharsets.UTF_8);
+		}
+
+		boolean hasSameContent(Entry other) {
+			return method() == other.method() && crc() == other.crc() &&
+					compressedSize() == other.compressedSize() && size() == other.size();
+		}
+
+		ByteBuffer toLocalHeader() {
+			ByteBuffer central = buffer();
+			ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameLength()).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(LOCAL_HEADER_SIGNATURE);
+			header.putShort(central.getShort(6)); // Version needed to extract.
+			header.putShort((short) (flags() & ~DATA_DESCRIPTOR_FLAG));
+			header.putShort(central.getShort(10)); // Compression method.
+			header.putInt(central.getInt(12)); // Modification time and date.
+			header.putInt(central.getInt(16)); // CRC-32.
+			header.putInt(central.getInt(20)); // Compressed size.
+			header.putInt(central.getInt(24)); // Uncompressed size.
+			header.putShort((short) nameLength());
+			header.putShort((short) 0); // No extra field.
+			header.put(record, CENTRAL_HEADER_SIZE, nameLength());
+			return header.flip();
+		}
+
+		ByteBuffer toCentralHeader(long newLocalHeaderOffset) {
+			ByteBuffer header = ByteBuffer.wrap(record.clone()).order(ByteOrder.LITTLE_ENDIAN);
+			header.putShort(8, (short) (flags() & ~DATA_DESCRIPTOR_FLAG));
+			header.putInt(42, (int) newLocalHeaderOffset);
+			return header;
+		}
+	}
+}
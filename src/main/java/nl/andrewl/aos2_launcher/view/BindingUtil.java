@@ -5,6 +5,7 @@ import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 
@@ -42,9 +43,13 @@ public class BindingUtil {
 			} else {
 				while (change.next()) {
 					if (change.wasPermutated()) {
+						// Reorder the existing mapped elements, instead of mapping them all again.
+						List<F> reordered = new ArrayList<>(mapped.subList(change.getFrom(), change.getTo()));
+						for (int i = change.getFrom(); i < change.getTo(); i++) {
+							reordered.set(change.getPermutation(i) - change.getFrom(), mapped.get(i));
+						}
 						mapped.subList(change.getFrom(), change.getTo()).clear();
-						mapped.addAll(change.getFrom(), change.getList().subList(change.getFrom(), change.getTo())
-								.stream().map(mapper).toList());
+						mapped.addAll(change.getFrom(), reordered);
 					} else {
 						if (change.wasRemoved()) {
 							mapped.subList(change.getFrom(), change.getFrom() + change.getRemovedSize()).clear();
@@ -0,0 +1,216 @@
+package nl.andrewl.aos2_launcher.view;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import nl.andrewl.aos2_launcher.model.ProgressReporter;
+import nl.andrewl.aos2_launcher.util.FileUtils;
+
+/**
+ * A progress reporter that can be called from any thread, as often as you
+ * like, and forwards updates to a reporter that must be called on the JavaFX
+ * application thread. Calls only record the latest state, which an
+ * {@link AnimationTimer} publishes at most once per frame, so a download that
+ * reports progress thousands of times doesn't flood the FX event queue. The
+ * timer stops itself once there's nothing left to publish.
+ * <p>
+ *     For byte-oriented progress, a smoothed transfer rate and an estimated
+ *     time remaining are appended to the action text.
+ * </p>
+ */
+public class CoalescingProgressReporter implements ProgressReporter {
+	/**
+	 * Time constant for the exponential smoothing of the transfer rate.
+	 */
+	private static final double RATE_SMOOTHING_SECONDS = 2.0;
+	/**
+	 * The minimum time between rate samples, so that we don't compute rates
+	 * from tiny time differences.
+	 */
+	private static final long MIN_RATE_SAMPLE_NANOS = 200_000_000;
+
+	private final ProgressReporter fxDelegate;
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			publish(now);
+		}
+	};
+
+	// The state waiting to be published, guarded by this reporter's monitor.
+	private boolean timerRunning = false;
+	private boolean dirty = false;
+	private boolean enableRequested = false;
+	private boolean disableRequested = false;
+	private boolean actionTextChanged = false;
+	private String pendingActionText = null;
+	private boolean progressChanged = false;
+	private double progress = -1;
+	private long bytesDone = -1;
+	private long totalBytes = -1;
+
+	// These are only accessed on the FX thread.
+	private String actionText = null;
+	private String shownActionText = null;
+	private long lastSampleBytes = -1;
+	private long lastSampleNanos = 0;
+	private double bytesPerSecond = 0;
+
+	/**
+	 * Creates a coalescing reporter.
+	 * @param fxDelegate The reporter to forward updates to. Its methods are
+	 *                   only ever called on the JavaFX application thread.
+	 */
+	public CoalescingProgressReporter(ProgressReporter fxDelegate) {
+		this.fxDelegate = fxDelegate;
+	}
+
+	@Override
+	public synchronized void enableProgress() {
+		// Enabling resets the delegate's progress and text, so anything set before it is moot.
+		enableRequested = true;
+		disableRequested = false;
+		actionTextChanged = false;
+		pendingActionText = null;
+		progressChanged = false;
+		bytesDone = -1;
+		markDirty();
+	}
+
+	@Override
+	public synchronized void disableProgress() {
+		disableRequested = true;
+		markDirty();
+	}
+
+	@Override
+	public synchronized void setActionText(String text) {
+		actionTextChanged = true;
+		pendingActionText = text;
+		markDirty();
+	}
+
+	@Override
+	public synchronized void setProgress(double progress) {
+		progressChanged = true;
+		this.progress = progress;
+		this.bytesDone = -1;
+		markDirty();
+	}
+
+	@Override
+	public synchronized void setProgressBytes(long bytesDone, long totalBytes) {
+		progressChanged = true;
+		this.progress = totalBytes > 0 ? (double) bytesDone / totalBytes : -1;
+		this.bytesDone = bytesDone;
+		this.totalBytes = totalBytes;
+		markDirty();
+	}
+
+	/**
+	 * Marks that there's state to publish, and starts the timer if it isn't
+	 * running. Only this wake-up goes through the FX event queue, and only
+	 * once per burst of updates.
+	 */
+	private void markDirty() {
+		dirty = true;
+		if (!timerRunning) {
+			timerRunning = true;
+			if (Platform.isFxApplicationThread()) {
+				timer.start();
+			} else {
+				Platform.runLater(timer::start);
+			}
+		}
+	}
+
+	private void publish(long now) {
+		boolean enable, disable, textChanged, progressChanged;
+		String text;
+		double progress;
+		long bytes, total;
+		synchronized (this) {
+			if (!dirty) {
+				timerRunning = false;
+				timer.stop();
+				return;
+			}
+			enable = enableRequested;
+			disable = disableRequested;
+			textChanged = actionTextChanged;
+			text = pendingActionText;
+			progressChanged = this.progressChanged;
+			progress = this.progress;
+			bytes = bytesDone;
+			total = totalBytes;
+			dirty = false;
+			enableRequested = false;
+			disableRequested = false;
+			actionTextChanged = false;
+			this.progressChanged = false;
+		}
+
+		if (enable) {
+			actionText = null;
+			shownActionText = null;
+			resetRate();
+			fxDelegate.enableProgress();
+		}
+		if (textChanged) {
+			actionText = text;
+			resetRate();
+			updateActionText(text);
+		}
+		if (progressChanged) {
+			fxDelegate.setProgress(progress);
+			if (bytes >= 0) updateRate(bytes, total, now);
+		}
+		if (disable) {
+			fxDelegate.disableProgress();
+		}
+	}
+
+	private void updateRate(long bytes, long total, long now) {
+		if (lastSampleBytes < 0 || bytes < lastSampleBytes) {
+			// The first sample (which may be a resumed download) only sets a baseline.
+			lastSampleBytes = bytes;
+			lastSampleNanos = now;
+			return;
+		}
+		long elapsedNanos = now - lastSampleNanos;
+		if (elapsedNanos < MIN_RATE_SAMPLE_NANOS) return;
+		double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+		double sampleRate = (bytes - lastSampleBytes) / elapsedSeconds;
+		double alpha = 1 - Math.exp(-elapsedSeconds / RATE_SMOOTHING_SECONDS);
+		bytesPerSecond = bytesPerSecond == 0 ? sampleRate : bytesPerSecond + alpha * (sampleRate - bytesPerSecond);
+		lastSampleBytes = bytes;
+		lastSampleNanos = now;
+
+		StringBuilder sb = new StringBuilder();
+		if (actionText != null) sb.append(actionText).append(' ');
+		sb.append('(').append(FileUtils.humanReadableByteCountSI((long) bytesPerSecond)).append("/s");
+		if (total > 0 && bytesPerSecond > 0) {
+			long secondsLeft = (long) Math.ceil((total - bytes) / bytesPerSecond);
+			sb.append(", ").append(formatDuration(secondsLeft)).append(" left");
+		}
+		sb.append(')');
+		updateActionText(sb.toString());
+	}
+
+	private void updateActionText(String text) {
+		if (text == null ? shownActionText == null : text.equals(shownActionText)) return;
+		shownActionText = text;
+		fxDelegate.setActionText(text);
+	}
+
+	private void resetRate() {
+		lastSampleBytes = -1;
+		bytesPerSecond = 0;
+	}
+
+	private static String formatDuration(long seconds) {
+		if (seconds >= 3600) {
+			return String.format("%d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
+		}
+		return String.format("%d:%02d", seconds / 60, seconds % 60);
+	}
+}
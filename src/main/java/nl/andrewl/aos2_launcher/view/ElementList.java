@@ -6,14 +6,31 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.css.PseudoClass;
 import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * A selectable list of elements, each shown with its own view. By default,
+ * every element gets a view in a plain container pane. For large lists, a
+ * virtualized list can be made with {@link #ElementList(ListView, Supplier, BiConsumer)},
+ * which only creates enough views to fill the viewport, and re-binds them to
+ * other elements as the user scrolls.
+ * @param <T> The element type.
+ * @param <V> The element view type.
+ */
 public class ElementList<T, V extends Node> {
+	private static final PseudoClass SELECTED_CLASS = PseudoClass.getPseudoClass("selected");
+
 	private final Pane container;
+	private final ListView<T> listView;
 
 	private final ObjectProperty<T> selectedElement = new SimpleObjectProperty<>(null);
 	private final ObservableList<T> elements = FXCollections.observableArrayList();
@@ -27,6 +44,7 @@ public class ElementList<T, V extends Node> {
 			Function<V, T> viewElementMapper
 	) {
 		this.container = container;
+		this.listView = null;
 		this.elementViewType = elementViewType;
 		this.viewElementMapper = viewElementMapper;
 		BindingUtil.mapContent(container.getChildren(), elements, element -> {
@@ -35,6 +53,41 @@ public class ElementList<T, V extends Node> {
 			return view;
 		});
 		container.addEventHandler(MouseEvent.MOUSE_CLICKED, this::handleMouseClick);
+		selectedElement.addListener((observable, oldValue, newValue) -> updateSelectedPseudoClass());
+	}
+
+	/**
+	 * Creates a virtualized element list, which shows its elements in the
+	 * given list view, using a small pool of recycled views.
+	 * @param listView The list view to show elements in.
+	 * @param viewFactory A factory that creates an empty element view.
+	 * @param viewBinder A function that binds an element view (first
+	 *                   argument) to an element (second argument), replacing
+	 *                   any previous binding.
+	 */
+	public ElementList(
+			ListView<T> listView,
+			Supplier<V> viewFactory,
+			BiConsumer<V, T> viewBinder
+	) {
+		this.container = null;
+		this.listView = listView;
+		this.elementViewType = null;
+		this.viewElementMapper = null;
+		listView.setItems(elements);
+		listView.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
+		listView.setCellFactory(lv -> new ElementCell<>(viewFactory.get(), viewBinder));
+		// Keep the selected element and the list view's selection in sync, whichever one changes.
+		var selectionModel = listView.getSelectionModel();
+		selectionModel.selectedItemProperty().addListener((observable, oldValue, newValue) -> selectedElement.set(newValue));
+		selectedElement.addListener((observable, oldValue, newValue) -> {
+			if (Objects.equals(newValue, selectionModel.getSelectedItem())) return;
+			if (newValue == null) {
+				selectionModel.clearSelection();
+			} else {
+				selectionModel.select(newValue);
+			}
+		});
 	}
 
 	@SuppressWarnings("unchecked")
@@ -63,17 +116,15 @@ public class ElementList<T, V extends Node> {
 	public void selectElement(T element) {
 		if (element != null && !elements.contains(element)) return;
 		selectedElement.set(element);
-		updateSelectedPseudoClass();
 	}
 
 	@SuppressWarnings("unchecked")
 	private void updateSelectedPseudoClass() {
-		PseudoClass selectedClass = PseudoClass.getPseudoClass("selected");
 		for (var node : container.getChildren()) {
 			if (!node.getClass().equals(elementViewType)) continue;
 			V view = (V) node;
 			T thisElement = viewElementMapper.apply(view);
-			view.pseudoClassStateChanged(selectedClass, thisElement.equals(selectedElement.get()));
+			view.pseudoClassStateChanged(SELECTED_CLASS, thisElement.equals(selectedElement.get()));
 		}
 	}
 
@@ -81,6 +132,12 @@ public class ElementList<T, V extends Node> {
 		return selectedElement.get();
 	}
 
+	/**
+	 * Gets the selected element property. Setting it selects the element,
+	 * just like {@link #selectElement(Object)}, except that it isn't checked
+	 * to be in this list.
+	 * @return The selected element property.
+	 */
 	public ObjectProperty<T> selectedElementProperty() {
 		return selectedElement;
 	}
@@ -102,10 +159,84 @@ public class ElementList<T, V extends Node> {
 		elements.addAll(newElements);
 	}
 
+	/**
+	 * Updates this list to match a new set of elements, matching old and new
+	 * elements by a key. Existing elements whose key is still present are
+	 * kept (along with their views and selection), and updated from their new
+	 * counterpart. Only elements with new keys are added, and only elements
+	 * whose key is gone are removed.
+	 * @param newElements The new elements.
+	 * @param keyMapper A function that gets an element's key.
+	 * @param updater A function that updates an existing element (first
+	 *                argument) from a new one (second argument).
+	 * @param <K> The key type.
+	 */
+	public <K> void reconcile(Collection<T> newElements, Function<? super T, K> keyMapper, BiConsumer<? super T, ? super T> updater) {
+		Map<K, T> newElementsByKey = new LinkedHashMap<>();
+		for (T element : newElements) newElementsByKey.put(keyMapper.apply(element), element);
+		Set<K> keptKeys = new HashSet<>();
+		Set<T> removedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (T element : elements) {
+			K key = keyMapper.apply(element);
+			T newElement = newElementsByKey.get(key);
+			if (newElement != null && keptKeys.add(key)) {
+				updater.accept(element, newElement);
+			} else {
+				removedElements.add(element);
+			}
+		}
+		if (!removedElements.isEmpty()) {
+			elements.removeAll(removedElements);
+			if (removedElements.contains(selectedElement.get())) selectElement(null);
+		}
+		List<T> addedElements = new ArrayList<>();
+		newElementsByKey.forEach((key, element) -> {
+			if (!keptKeys.contains(key)) addedElements.add(element);
+		});
+		if (!addedElements.isEmpty()) elements.addAll(addedElements);
+	}
+
+	public void sort(Comparator<? super T> comparator) {
+		elements.sort(comparator);
+	}
+
 	public void remove(T element) {
 		elements.remove(element);
 		if (element != null && element.equals(selectedElement.get())) {
 			selectElement(null);
 		}
 	}
+
+	/**
+	 * A list cell that keeps a single element view for its whole lifetime,
+	 * and re-binds it whenever the cell is reused for a different element.
+	 */
+	private static class ElementCell<T, V extends Node> extends ListCell<T> {
+		private final V view;
+		private final BiConsumer<V, T> viewBinder;
+
+		public ElementCell(V view, BiConsumer<V, T> viewBinder) {
+			this.view = view;
+			this.viewBinder = viewBinder;
+			view.getStyleClass().add("element-list-item");
+			setText(null);
+		}
+
+		@Override
+		protected void updateItem(T item, boolean empty) {
+			super.updateItem(item, empty);
+			if (empty || item == null) {
+				setGraphic(null);
+			} else {
+				viewBinder.accept(view, item);
+				setGraphic(view);
+			}
+		}
+
+		@Override
+		public void updateSelected(boolean selected) {
+			super.updateSelected(selected);
+			view.pseudoClassStateChanged(SELECTED_CLASS, selected);
+		}
+	}
 }
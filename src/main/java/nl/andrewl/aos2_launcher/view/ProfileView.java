@@ -1,23 +1,24 @@
 package nl.andrewl.aos2_launcher.view;
 
-import javafx.fxml.FXML;
-import javafx.scene.Node;
 import javafx.scene.control.Label;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
 import nl.andrewl.aos2_launcher.model.Profile;
-import nl.andrewl.aos2_launcher.util.FxUtils;
 
 public class ProfileView extends Pane {
 	private final Profile profile;
 
-	@FXML public Label nameLabel;
-	@FXML public Label clientVersionLabel;
-	@FXML public Label usernameLabel;
+	private final Label nameLabel = new Label();
+	private final Label clientVersionLabel = ViewBuilder.valueLabel();
+	private final Label usernameLabel = ViewBuilder.valueLabel();
 
 	public ProfileView(Profile profile) {
 		this.profile = profile;
-		Node node = FxUtils.loadNode("/profile_view.fxml", this);
-		getChildren().add(node);
+		VBox content = new VBox(
+				ViewBuilder.rightAlignedRow("Client Version", clientVersionLabel),
+				ViewBuilder.rightAlignedRow("Username", usernameLabel)
+		);
+		getChildren().add(ViewBuilder.banner(nameLabel, content));
 		nameLabel.textProperty().bind(profile.nameProperty());
 		clientVersionLabel.textProperty().bind(profile.clientVersionProperty());
 		usernameLabel.textProperty().bind(profile.usernameProperty());
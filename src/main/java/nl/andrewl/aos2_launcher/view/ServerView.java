@@ -1,32 +1,64 @@
 package nl.andrewl.aos2_launcher.view;
 
-import javafx.fxml.FXML;
-import javafx.scene.Node;
+import javafx.beans.binding.Bindings;
 import javafx.scene.control.Label;
-import javafx.scene.layout.Pane;
+import javafx.scene.layout.*;
 import nl.andrewl.aos2_launcher.model.Server;
-import nl.andrewl.aos2_launcher.util.FxUtils;
 
 public class ServerView extends Pane {
-	private final Server server;
+	private Server server;
 
-	@FXML public Label nameLabel;
-	@FXML public Label descriptionLabel;
-	@FXML public Label hostLabel;
-	@FXML public Label portLabel;
-	@FXML public Label maxPlayersLabel;
-	@FXML public Label currentPlayersLabel;
+	private final Label nameLabel = new Label();
+	private final Label descriptionLabel = new Label();
+	private final Label hostLabel = ViewBuilder.valueLabel();
+	private final Label portLabel = ViewBuilder.valueLabel();
+	private final Label maxPlayersLabel = ViewBuilder.valueLabel();
+	private final Label currentPlayersLabel = ViewBuilder.valueLabel();
+	private final Label latencyLabel = ViewBuilder.valueLabel();
+
+	/**
+	 * Creates an empty server view, which can later be bound to a server
+	 * with {@link #setServer(Server)}. The view is built in code rather than
+	 * loaded from FXML, since we create one for every server in the list.
+	 */
+	public ServerView() {
+		descriptionLabel.setWrapText(true);
+		HBox playersBox = new HBox(currentPlayersLabel, ViewBuilder.valueLabel(" / "), maxPlayersLabel);
+		VBox content = new VBox(
+				descriptionLabel,
+				ViewBuilder.row("Host", hostLabel, 150),
+				ViewBuilder.row("Port", portLabel, 150),
+				ViewBuilder.row("Players", playersBox, 150),
+				ViewBuilder.row("Ping", latencyLabel, 150)
+		);
+		BorderPane banner = ViewBuilder.banner(nameLabel, content);
+		banner.setMinSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+		banner.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+		getChildren().add(banner);
+	}
 
 	public ServerView(Server server) {
+		this();
+		setServer(server);
+	}
+
+	/**
+	 * Binds this view to show the given server, replacing any previous one.
+	 * @param server The server to show.
+	 */
+	public void setServer(Server server) {
+		if (this.server == server) return;
 		this.server = server;
-		Node node = FxUtils.loadNode("/server_view.fxml", this);
-		getChildren().add(node);
 		nameLabel.textProperty().bind(server.nameProperty());
 		descriptionLabel.textProperty().bind(server.descriptionProperty());
 		hostLabel.textProperty().bind(server.hostProperty());
 		portLabel.textProperty().bind(server.portProperty().asString());
 		maxPlayersLabel.textProperty().bind(server.maxPlayersProperty().asString());
 		currentPlayersLabel.textProperty().bind(server.currentPlayersProperty().asString());
+		latencyLabel.textProperty().bind(Bindings.createStringBinding(
+				() -> server.getLatency() < 0 ? "Unknown" : server.getLatency() + " ms",
+				server.latencyProperty()
+		));
 	}
 
 	public Server getServer() {
@@ -0,0 +1,91 @@
+package nl.andrewl.aos2_launcher.view;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.BorderPane;
+
+/**
+ * Helpers for building the small views that are shown many times in a list,
+ * like {@link ServerView} and {@link ProfileView}, directly in code. Unlike
+ * loading an FXML file, this involves no XML parsing or reflection, which
+ * adds up when creating hundreds or thousands of rows.
+ */
+class ViewBuilder {
+	private static final String TITLE_STYLE = "-fx-font-size: 16px; -fx-font-weight: bold;";
+	private static final String VALUE_STYLE = "-fx-font-weight: bold;";
+
+	/**
+	 * Creates the standard banner layout: a bold title on top, and some
+	 * content below it.
+	 * @param titleLabel The title label.
+	 * @param content The content.
+	 * @return The banner node.
+	 */
+	static BorderPane banner(Label titleLabel, Node content) {
+		BorderPane pane = new BorderPane();
+		pane.setPrefWidth(300);
+		pane.setPadding(new Insets(5));
+		titleLabel.setStyle(TITLE_STYLE);
+		BorderPane.setAlignment(titleLabel, Pos.CENTER_LEFT);
+		BorderPane.setMargin(titleLabel, new Insets(0, 0, 5, 0));
+		pane.setTop(titleLabel);
+		pane.setCenter(content);
+		return pane;
+	}
+
+	/**
+	 * Creates a row with a name on the left, and a value node which starts at
+	 * a fixed offset from the left.
+	 * @param name The name to show.
+	 * @param value The value node.
+	 * @param valueOffset The offset from the left for the value.
+	 * @return The row.
+	 */
+	static AnchorPane row(String name, Node value, double valueOffset) {
+		Label nameLabel = new Label(name);
+		AnchorPane.setTopAnchor(nameLabel, 0.0);
+		AnchorPane.setBottomAnchor(nameLabel, 0.0);
+		AnchorPane.setLeftAnchor(nameLabel, 0.0);
+		AnchorPane.setTopAnchor(value, 0.0);
+		AnchorPane.setBottomAnchor(value, 0.0);
+		AnchorPane.setLeftAnchor(value, valueOffset);
+		AnchorPane.setRightAnchor(value, 0.0);
+		return new AnchorPane(nameLabel, value);
+	}
+
+	/**
+	 * Creates a row with a name on the left, and a value on the right.
+	 * @param name The name to show.
+	 * @param value The value node.
+	 * @return The row.
+	 */
+	static AnchorPane rightAlignedRow(String name, Node value) {
+		Label nameLabel = new Label(name);
+		AnchorPane.setTopAnchor(nameLabel, 0.0);
+		AnchorPane.setBottomAnchor(nameLabel, 0.0);
+		AnchorPane.setLeftAnchor(nameLabel, 0.0);
+		AnchorPane.setTopAnchor(value, 0.0);
+		AnchorPane.setBottomAnchor(value, 0.0);
+		AnchorPane.setRightAnchor(value, 0.0);
+		return new AnchorPane(nameLabel, value);
+	}
+
+	/**
+	 * Creates a bold label for showing a value.
+	 * @return The label.
+	 */
+	static Label valueLabel() {
+		Label label = new Label();
+		label.setStyle(VALUE_STYLE);
+		return label;
+	}
+
+	static Label valueLabel(String text) {
+		Label label = valueLabel();
+		label.setText(text);
+		return label;
+	}
+}